@@ -14,6 +14,7 @@ public class AppConfig {
     /**
      * Creates a ModelMapper bean to be used for object mapping.
      * ModelMapper is a library that simplifies the process of mapping objects to each other.
+     * It matches properties by reflection, so request paths use hand-written mappers such as UserMapper instead.
      *
      * @return a new instance of ModelMapper
      */
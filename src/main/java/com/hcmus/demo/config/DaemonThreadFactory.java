@@ -0,0 +1,21 @@
+package com.hcmus.demo.config;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Thread factory of the application's own executors.
+ * Creates daemon threads named after the executor, "prefix-N", so that a stuck executor never blocks the JVM
+ * from exiting and its threads are easy to find in a thread dump.
+ */
+public class DaemonThreadFactory extends CustomizableThreadFactory {
+
+    /**
+     * Creates a thread factory for the given executor.
+     *
+     * @param name the name of the executor, used as the thread name prefix
+     */
+    public DaemonThreadFactory(String name) {
+        super(name + "-");
+        setDaemon(true);
+    }
+}
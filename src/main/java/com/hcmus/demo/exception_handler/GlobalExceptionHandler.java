@@ -1,5 +1,6 @@
 package com.hcmus.demo.exception_handler;
 
+import com.hcmus.demo.exception_handler.exception.ServiceUnavailableException;
 import com.hcmus.demo.exception_handler.exception.UserNotFoundException;
 import com.hcmus.demo.security.jwt.JwtValidationException;
 import jakarta.persistence.EntityNotFoundException;
@@ -12,6 +13,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.transaction.TransactionSystemException;
 import org.springframework.validation.FieldError;
@@ -199,4 +201,44 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
         LOGGER.error(ex.getMessage());
         return error;
     }
+
+    /**
+     * Handles ServiceUnavailableException and its subclasses: saturated password hashing or authentication executors,
+     * or an unavailable identity provider. The client is asked to retry later instead of queueing more work.
+     *
+     * @param request the HTTP request
+     * @param ex      the exception
+     * @return a ResponseEntity containing error details and a Retry-After header
+     */
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<ErrorDTO> handleServiceUnavailable(HttpServletRequest request,
+                                                             ServiceUnavailableException ex) {
+        ErrorDTO error = new ErrorDTO();
+        error.setTimestamp(new Date());
+        error.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        error.addError(ex.getMessage());
+        error.setPath(request.getServletPath());
+        LOGGER.warn("{}: {}", ex.getMessage(), ex.getCause() != null ? ex.getCause().toString() : "");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(error);
+    }
+
+    /**
+     * Handles InternalAuthenticationServiceException, which Spring Security wraps around the failures of the user
+     * lookup. A lookup failing because the server is saturated, e.g. the password hashing bulkhead, is answered like
+     * ServiceUnavailableException; any other failure is an internal error.
+     *
+     * @param request the HTTP request
+     * @param ex      the exception
+     * @return a ResponseEntity containing error details
+     */
+    @ExceptionHandler(InternalAuthenticationServiceException.class)
+    public ResponseEntity<ErrorDTO> handleInternalAuthenticationService(HttpServletRequest request,
+                                                                        InternalAuthenticationServiceException ex) {
+        if (ex.getCause() instanceof ServiceUnavailableException unavailable) {
+            return handleServiceUnavailable(request, unavailable);
+        }
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(handleGeneralException(request, ex));
+    }
 }
@@ -0,0 +1,18 @@
+package com.hcmus.demo.exception_handler.exception;
+
+/**
+ * Custom exception class for handling scenarios where a consumed refresh token is presented again.
+ * This class extends Exception to provide a specific exception for cases where a refresh token is replayed,
+ * after which its whole token family has been revoked.
+ */
+public class RefreshTokenReuseException extends Exception {
+
+    /**
+     * Constructs a new RefreshTokenReuseException with the specified detail message.
+     *
+     * @param message the detail message
+     */
+    public RefreshTokenReuseException(String message) {
+        super(message);
+    }
+}
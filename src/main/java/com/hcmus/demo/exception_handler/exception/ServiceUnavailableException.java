@@ -0,0 +1,36 @@
+package com.hcmus.demo.exception_handler.exception;
+
+import lombok.Getter;
+
+/**
+ * Base exception class for requests refused while a resource is saturated or unavailable.
+ * These exceptions are answered with 503 Service Unavailable and a Retry-After header: the request was not wrong,
+ * and the client should retry it later.
+ */
+@Getter
+public class ServiceUnavailableException extends RuntimeException {
+    private final long retryAfterSeconds; // Suggested delay before retrying the request
+
+    /**
+     * Constructs a new ServiceUnavailableException with the specified detail message.
+     *
+     * @param message           the detail message
+     * @param retryAfterSeconds the suggested delay before retrying
+     */
+    public ServiceUnavailableException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Constructs a new ServiceUnavailableException with the specified detail message and cause.
+     *
+     * @param message           the detail message
+     * @param retryAfterSeconds the suggested delay before retrying
+     * @param cause             the failure making the resource unavailable
+     */
+    public ServiceUnavailableException(String message, long retryAfterSeconds, Throwable cause) {
+        super(message, cause);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,191 @@
+package com.hcmus.demo.image;
+
+import com.hcmus.demo.config.DaemonThreadFactory;
+import com.hcmus.demo.user.UserService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background pipeline copying the avatars of federated users into the image storage.
+ * Sign-in returns as soon as the ingestion is queued, with the source picture URL as profile;
+ * the profile is replaced by the hosted URL when the copy is stored, unless it was changed meanwhile.
+ * Ingestions run on a fixed pool fed by a bounded queue. A failed copy is retried with exponential backoff
+ * and jitter, up to a maximum number of attempts. A user has at most one ingestion pending:
+ * submitting again while one is queued, running or waiting for a retry does nothing.
+ * A rejected or failed ingestion leaves the source URL as profile, and is submitted again on the next sign-in.
+ */
+@Service
+public class AvatarIngestionService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AvatarIngestionService.class);
+
+    private final ImageStorage imageStorage;
+    private final UserService userService;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService retryScheduler; // Waits out the backoff, then queues the retry
+    private final Map<Long, String> pending = new ConcurrentHashMap<>(); // Source URL by user id, one per user
+    private final int maxPending;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+    private final Counter storedCounter;
+    private final Counter supersededCounter;
+    private final Counter retriedCounter;
+    private final Counter failedCounter;
+    private final Counter rejectedCounter;
+
+    public AvatarIngestionService(ImageStorage imageStorage, UserService userService, MeterRegistry meterRegistry,
+                                  @Value("${app.avatar-ingestion.threads:2}") int threads,
+                                  @Value("${app.avatar-ingestion.queue-capacity:1000}") int queueCapacity,
+                                  @Value("${app.avatar-ingestion.max-attempts:5}") int maxAttempts,
+                                  @Value("${app.avatar-ingestion.backoff-ms:500}") long backoffMillis,
+                                  @Value("${app.avatar-ingestion.max-backoff-ms:60000}") long maxBackoffMillis) {
+        this.imageStorage = imageStorage;
+        this.userService = userService;
+        this.maxPending = queueCapacity;
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = backoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new DaemonThreadFactory("avatar-ingestion"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(
+                new DaemonThreadFactory("avatar-ingestion-retry"));
+
+        this.storedCounter = outcomeCounter(meterRegistry, "stored");
+        this.supersededCounter = outcomeCounter(meterRegistry, "superseded");
+        this.retriedCounter = outcomeCounter(meterRegistry, "retried");
+        this.failedCounter = outcomeCounter(meterRegistry, "failed");
+        this.rejectedCounter = outcomeCounter(meterRegistry, "rejected");
+        Gauge.builder("avatar.ingestion.queue.depth", executor.getQueue(), BlockingQueue::size)
+                .description("Avatar ingestions waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("avatar.ingestion.pending", pending, Map::size)
+                .description("Avatar ingestions queued, running or waiting for a retry")
+                .register(meterRegistry);
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("avatar.ingestion")
+                .description("Avatar ingestion attempts by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues the copy of the user's avatar into the image storage.
+     *
+     * @param userId    the id of the user
+     * @param sourceUrl the URL of the avatar, which is the user's profile until the copy is stored
+     * @return true if the ingestion was queued, false if one is already pending for the user or the queue is full
+     */
+    public boolean submit(Long userId, String sourceUrl) {
+        if (sourceUrl == null || sourceUrl.isEmpty()) {
+            return false;
+        }
+        if (pending.size() >= maxPending || pending.putIfAbsent(userId, sourceUrl) != null) {
+            return false;
+        }
+        try {
+            executor.execute(() -> ingest(userId, sourceUrl, 1));
+            return true;
+        } catch (RejectedExecutionException ex) {
+            pending.remove(userId, sourceUrl);
+            rejectedCounter.increment();
+            LOGGER.warn("Avatar ingestion queue is full, keeping the source avatar of user {}", userId);
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether an ingestion is queued, running or waiting for a retry for the user.
+     *
+     * @param userId the id of the user
+     * @return true if an ingestion is pending
+     */
+    public boolean isPending(Long userId) {
+        return pending.containsKey(userId);
+    }
+
+    /**
+     * Stops the workers. Pending ingestions are dropped and resubmitted on the users' next sign-in.
+     */
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private void ingest(Long userId, String sourceUrl, int attempt) {
+        String hostedUrl;
+        try {
+            hostedUrl = imageStorage.store(sourceUrl);
+        } catch (Exception ex) {
+            retryOrGiveUp(userId, sourceUrl, attempt, ex);
+            return;
+        }
+
+        try {
+            if (userService.updateProfile(userId, sourceUrl, hostedUrl)) {
+                storedCounter.increment();
+            } else {
+                supersededCounter.increment();
+            }
+        } catch (RuntimeException ex) {
+            retryOrGiveUp(userId, sourceUrl, attempt, ex);
+            return;
+        }
+        pending.remove(userId, sourceUrl);
+    }
+
+    private void retryOrGiveUp(Long userId, String sourceUrl, int attempt, Exception cause) {
+        if (attempt >= maxAttempts) {
+            pending.remove(userId, sourceUrl);
+            failedCounter.increment();
+            LOGGER.error("Could not ingest the avatar of user {} after {} attempts", userId, attempt, cause);
+            return;
+        }
+
+        retriedCounter.increment();
+        LOGGER.warn("Avatar ingestion of user {} failed on attempt {}: {}", userId, attempt, cause.getMessage());
+        try {
+            retryScheduler.schedule(() -> requeue(userId, sourceUrl, attempt + 1),
+                    backoff(attempt), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            pending.remove(userId, sourceUrl); // Shutting down
+        }
+    }
+
+    private void requeue(Long userId, String sourceUrl, int attempt) {
+        try {
+            executor.execute(() -> ingest(userId, sourceUrl, attempt));
+        } catch (RejectedExecutionException ex) {
+            pending.remove(userId, sourceUrl);
+            rejectedCounter.increment();
+        }
+    }
+
+    /**
+     * Exponential backoff with jitter: between half and all of backoff * 2^(attempt - 1), capped.
+     */
+    private long backoff(int attempt) {
+        long delay = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt - 1, 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+}
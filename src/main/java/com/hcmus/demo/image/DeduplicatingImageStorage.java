@@ -0,0 +1,239 @@
+package com.hcmus.demo.image;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hcmus.demo.model.StoredImage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed image storage in front of another storage.
+ * A source URL already stored is answered from its digest without fetching it; otherwise the image is fetched
+ * to a temporary file while its bytes are hashed, and identical bytes already stored, e.g. a default avatar
+ * shared by many users, are answered without uploading them again. Only new content reaches the delegate.
+ * The digest index is persisted in the stored_images table, with a bounded in-memory cache in front of it.
+ * Two concurrent misses on the same new image may both upload it; the index keeps the last one.
+ */
+public class DeduplicatingImageStorage implements ImageStorage {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeduplicatingImageStorage.class);
+    private static final String URL_PREFIX = "url:";
+    private static final String CONTENT_PREFIX = "sha256:";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final ImageStorage delegate;
+    private final StoredImageRepository storedImageRepository;
+    private final Cache<String, StoredImage> index; // Recently used entries of the digest index
+    private final HttpClient httpClient;
+    private final Duration fetchTimeout;
+    private final long maxImageBytes;
+    private final Counter urlHits;
+    private final Counter contentHits;
+    private final Counter misses;
+    private final AtomicLong bytesSaved = new AtomicLong(); // Bytes of the uploads skipped on a hit
+
+    public DeduplicatingImageStorage(ImageStorage delegate, StoredImageRepository storedImageRepository,
+                                     MeterRegistry meterRegistry, long cacheSize, Duration fetchTimeout,
+                                     long maxImageBytes) {
+        this.delegate = delegate;
+        this.storedImageRepository = storedImageRepository;
+        this.index = Caffeine.newBuilder().maximumSize(cacheSize).build();
+        this.fetchTimeout = fetchTimeout;
+        this.maxImageBytes = maxImageBytes;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(fetchTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+
+        this.urlHits = lookupCounter(meterRegistry, "url-hit");
+        this.contentHits = lookupCounter(meterRegistry, "content-hit");
+        this.misses = lookupCounter(meterRegistry, "miss");
+        FunctionCounter.builder("image.dedup.bytes.saved", bytesSaved, AtomicLong::get)
+                .baseUnit("bytes")
+                .description("Bytes not uploaded because the image was already stored")
+                .register(meterRegistry);
+        Gauge.builder("image.dedup.ratio", this, DeduplicatingImageStorage::dedupRatio)
+                .description("Share of stored images answered without an upload")
+                .register(meterRegistry);
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("image.dedup.lookups")
+                .description("Image storage requests by deduplication result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the hosted copy of the source URL or of identical content, uploading the image only if neither is stored.
+     *
+     * @param sourceUrl the URL of the image to copy
+     * @return the URL of the hosted copy
+     * @throws IOException if the image cannot be fetched or stored
+     */
+    @Override
+    public String store(String sourceUrl) throws IOException {
+        String urlDigest = URL_PREFIX + sha256(sourceUrl.getBytes(StandardCharsets.UTF_8));
+        StoredImage stored = lookup(urlDigest);
+        if (stored != null) {
+            hit(urlHits, stored);
+            return stored.getUrl();
+        }
+
+        Path spooled = Files.createTempFile("image-", ".tmp");
+        try {
+            String contentDigest = fetch(sourceUrl, spooled);
+            stored = storeContent(contentDigest, spooled);
+            record(urlDigest, stored.getUrl(), stored.getSizeBytes());
+            return stored.getUrl();
+        } finally {
+            Files.deleteIfExists(spooled);
+        }
+    }
+
+    /**
+     * Returns the hosted copy of identical content, uploading the image only if it is not stored.
+     *
+     * @param content the bytes of the image
+     * @return the URL of the hosted image
+     * @throws IOException if the image cannot be read or stored
+     */
+    @Override
+    public String store(InputStream content) throws IOException {
+        Path spooled = Files.createTempFile("image-", ".tmp");
+        try {
+            return storeContent(spool(content, spooled), spooled).getUrl();
+        } finally {
+            Files.deleteIfExists(spooled);
+        }
+    }
+
+    private StoredImage storeContent(String contentDigest, Path spooled) throws IOException {
+        StoredImage stored = lookup(contentDigest);
+        if (stored != null) {
+            hit(contentHits, stored);
+            return stored;
+        }
+
+        misses.increment();
+        String url;
+        try (InputStream content = Files.newInputStream(spooled)) {
+            url = delegate.store(content);
+        }
+        return record(contentDigest, url, Files.size(spooled));
+    }
+
+    private StoredImage lookup(String digest) {
+        StoredImage cached = index.getIfPresent(digest);
+        if (cached != null) {
+            return cached;
+        }
+        StoredImage stored = storedImageRepository.findById(digest).orElse(null);
+        if (stored != null) {
+            index.put(digest, stored);
+        }
+        return stored;
+    }
+
+    private StoredImage record(String digest, String url, long sizeBytes) {
+        StoredImage stored = new StoredImage(digest, url, sizeBytes, new Date());
+        try {
+            storedImageRepository.save(stored);
+        } catch (RuntimeException ex) {
+            // The image is stored; losing its index entry only costs a future upload
+            LOGGER.warn("Could not record the stored image {}", digest, ex);
+        }
+        index.put(digest, stored);
+        return stored;
+    }
+
+    private void hit(Counter counter, StoredImage stored) {
+        counter.increment();
+        bytesSaved.addAndGet(stored.getSizeBytes());
+    }
+
+    private double dedupRatio() {
+        double hits = urlHits.count() + contentHits.count();
+        double total = hits + misses.count();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    /**
+     * Fetches the image to the spool file.
+     *
+     * @return the content digest of the image
+     */
+    private String fetch(String sourceUrl, Path spooled) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(sourceUrl)).timeout(fetchTimeout).GET().build();
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching " + sourceUrl, ex);
+        }
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("Could not fetch " + sourceUrl + ": HTTP " + response.statusCode());
+            }
+            return spool(body, spooled);
+        }
+    }
+
+    /**
+     * Copies the image to the spool file while hashing it, so that the image is never held in the heap.
+     *
+     * @return the content digest of the image
+     */
+    private String spool(InputStream content, Path spooled) throws IOException {
+        MessageDigest digest = newDigest();
+        long size;
+        try (OutputStream out = Files.newOutputStream(spooled)) {
+            DigestInputStream in = new DigestInputStream(content, digest);
+            byte[] buffer = new byte[8192];
+            size = 0;
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                size += count;
+                if (size > maxImageBytes) {
+                    throw new IOException("Image is larger than " + maxImageBytes + " bytes");
+                }
+                out.write(buffer, 0, count);
+            }
+        }
+        return CONTENT_PREFIX + HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String sha256(byte[] bytes) {
+        return HexFormat.of().formatHex(newDigest().digest(bytes));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is not available", ex);
+        }
+    }
+}
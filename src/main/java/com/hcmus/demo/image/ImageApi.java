@@ -0,0 +1,188 @@
+package com.hcmus.demo.image;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * REST controller serving the images of the local image storage.
+ * Stored images are named by the SHA-256 of their content, so a name always serves the same bytes: responses carry
+ * the name as strong ETag and may be cached for a year. Single byte ranges are supported.
+ * The file is sent with the container's sendfile support when available, and with FileChannel.transferTo otherwise,
+ * so its bytes are not copied through the heap.
+ */
+@RestController
+@RequestMapping("/images")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.image.storage", havingValue = "local")
+public class ImageApi {
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    private static final String FALLBACK_CACHE_CONTROL = "public, max-age=60";
+    private static final String THUMBNAIL_SUFFIX = "-thumb";
+
+    private final LocalImageStorage localImageStorage;
+
+    /**
+     * Endpoint to get a stored image, or its thumbnail.
+     * A thumbnail not generated yet is answered with the full-size image, which is not cached for long.
+     *
+     * @param name      the name of the image
+     * @param thumbnail whether to serve the thumbnail
+     * @param request   the HTTP request
+     * @param response  the HTTP response
+     * @throws IOException if the image cannot be read or sent
+     */
+    @GetMapping("/{name}")
+    public void getImage(@PathVariable String name, @RequestParam(defaultValue = "false") boolean thumbnail,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path file = localImageStorage.resolve(thumbnail ? name + THUMBNAIL_SUFFIX : name);
+        String cacheControl = IMMUTABLE_CACHE_CONTROL;
+        if (thumbnail && file != null && !Files.exists(file)) {
+            file = localImageStorage.resolve(name);
+            cacheControl = FALLBACK_CACHE_CONTROL;
+        }
+        if (file == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            String etag = "\"" + file.getFileName() + "\"";
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+
+            long length = channel.size();
+            long start = 0;
+            long end = length - 1;
+            String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+            long[] range = ifRange == null || ifRange.equals(etag)
+                    ? parseRange(request.getHeader(HttpHeaders.RANGE), length) : null;
+            if (range != null && range.length == 0) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (range != null) {
+                start = range[0];
+                end = range[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+            response.setContentType(sniffContentType(channel));
+            response.setContentLengthLong(end - start + 1);
+
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                request.setAttribute(SENDFILE_FILENAME, file.toString());
+                request.setAttribute(SENDFILE_START, start);
+                request.setAttribute(SENDFILE_END, end + 1);
+                return;
+            }
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                position += channel.transferTo(position, end + 1 - position, out);
+            }
+        } catch (NoSuchFileException ex) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        }
+    }
+
+    /**
+     * Recognizes the common image formats from their first bytes, as files are stored without extension.
+     */
+    private static String sniffContentType(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(12);
+        channel.read(header, 0);
+        byte[] b = header.array();
+        if (b[0] == (byte) 0x89 && b[1] == 'P' && b[2] == 'N' && b[3] == 'G') {
+            return "image/png";
+        }
+        if (b[0] == (byte) 0xFF && b[1] == (byte) 0xD8 && b[2] == (byte) 0xFF) {
+            return "image/jpeg";
+        }
+        if (b[0] == 'G' && b[1] == 'I' && b[2] == 'F') {
+            return "image/gif";
+        }
+        if (b[0] == 'R' && b[1] == 'I' && b[2] == 'F' && b[3] == 'F' && b[8] == 'W' && b[9] == 'E' && b[10] == 'B') {
+            return "image/webp";
+        }
+        return "application/octet-stream";
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses a single byte range.
+     *
+     * @return the first and last byte of the range, an empty array if the range cannot be satisfied,
+     * or null to serve the whole file (no range, malformed range, or several ranges)
+     */
+    private static long[] parseRange(String header, long length) {
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return new long[0];
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? length - 1 : Math.min(length - 1, Long.parseLong(spec.substring(dash + 1)));
+            }
+            if (start >= length || start > end) {
+                return new long[0];
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+}
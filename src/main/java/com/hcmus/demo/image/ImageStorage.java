@@ -0,0 +1,28 @@
+package com.hcmus.demo.image;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Storage hosting the profile images of the users.
+ */
+public interface ImageStorage {
+
+    /**
+     * Copies the image found at the source URL into the storage.
+     *
+     * @param sourceUrl the URL of the image to copy
+     * @return the URL of the hosted copy
+     * @throws IOException if the image cannot be fetched or stored
+     */
+    String store(String sourceUrl) throws IOException;
+
+    /**
+     * Stores the image read from the stream. The stream is not closed.
+     *
+     * @param content the bytes of the image
+     * @return the URL of the hosted image
+     * @throws IOException if the image cannot be read or stored
+     */
+    String store(InputStream content) throws IOException;
+}
@@ -0,0 +1,40 @@
+package com.hcmus.demo.image;
+
+import com.hcmus.demo.util.CloudinaryUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.time.Duration;
+
+/**
+ * Configuration class for the image storage.
+ * Images are stored through the content-addressed deduplication layer, in front of the backend selected by
+ * "app.image.storage": Cloudinary (default) or the local filesystem.
+ */
+@Configuration
+public class ImageStorageConfig {
+
+    /**
+     * Creates the image storage used by the application.
+     *
+     * @return the deduplicating image storage
+     */
+    @Bean
+    @Primary
+    public ImageStorage imageStorage(ObjectProvider<CloudinaryUtil> cloudinaryUtil,
+                                     ObjectProvider<LocalImageStorage> localImageStorage,
+                                     @Value("${app.image.storage:cloudinary}") String backend,
+                                     StoredImageRepository storedImageRepository,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${app.image.dedup.cache-size:10000}") long cacheSize,
+                                     @Value("${app.image.fetch-timeout:10s}") Duration fetchTimeout,
+                                     @Value("${app.image.max-bytes:5242880}") long maxImageBytes) {
+        ImageStorage delegate = "local".equals(backend) ? localImageStorage.getObject() : cloudinaryUtil.getObject();
+        return new DeduplicatingImageStorage(delegate, storedImageRepository, meterRegistry,
+                cacheSize, fetchTimeout, maxImageBytes);
+    }
+}
@@ -0,0 +1,267 @@
+package com.hcmus.demo.image;
+
+import com.hcmus.demo.config.DaemonThreadFactory;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Image storage on the local filesystem, served by ImageApi.
+ * Images are streamed to a temporary file while their SHA-256 is computed, then moved to a file named by the digest,
+ * so the heap never holds a whole source image and identical images share one file.
+ * A fixed-size PNG thumbnail is generated for every new image on a bounded worker pool; the image is decoded
+ * with subsampling, so the decoded raster is close to the thumbnail size rather than to the source size.
+ */
+@Component
+@ConditionalOnProperty(name = "app.image.storage", havingValue = "local")
+public class LocalImageStorage implements ImageStorage {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalImageStorage.class);
+    private static final Pattern IMAGE_NAME = Pattern.compile("[0-9a-f]{64}(-thumb)?");
+    private static final String THUMBNAIL_SUFFIX = "-thumb";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final Path directory;
+    private final String baseUrl;
+    private final long maxImageBytes;
+    private final int thumbnailSize;
+    private final Duration fetchTimeout;
+    private final HttpClient httpClient;
+    private final ThreadPoolExecutor thumbnailExecutor;
+
+    public LocalImageStorage(@Value("${app.image.local.directory:data/images}") Path directory,
+                             @Value("${app.image.local.base-url:/images}") String baseUrl,
+                             @Value("${app.image.max-bytes:5242880}") long maxImageBytes,
+                             @Value("${app.image.fetch-timeout:10s}") Duration fetchTimeout,
+                             @Value("${app.image.local.thumbnail-size:128}") int thumbnailSize,
+                             @Value("${app.image.local.thumbnail-threads:2}") int thumbnailThreads,
+                             @Value("${app.image.local.thumbnail-queue-capacity:100}") int thumbnailQueueCapacity)
+            throws IOException {
+        this.directory = Files.createDirectories(directory).toAbsolutePath();
+        this.baseUrl = baseUrl;
+        this.maxImageBytes = maxImageBytes;
+        this.thumbnailSize = thumbnailSize;
+        this.fetchTimeout = fetchTimeout;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(fetchTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.thumbnailExecutor = new ThreadPoolExecutor(thumbnailThreads, thumbnailThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(thumbnailQueueCapacity), new DaemonThreadFactory("image-thumbnail"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Streams the image found at the source URL to disk.
+     *
+     * @param sourceUrl the URL of the image to copy
+     * @return the URL serving the stored image
+     * @throws IOException if the image cannot be fetched or stored
+     */
+    @Override
+    public String store(String sourceUrl) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(sourceUrl)).timeout(fetchTimeout).GET().build();
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching " + sourceUrl, ex);
+        }
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("Could not fetch " + sourceUrl + ": HTTP " + response.statusCode());
+            }
+            return store(body);
+        }
+    }
+
+    /**
+     * Streams the image to disk. The stream is not closed.
+     *
+     * @param content the bytes of the image
+     * @return the URL serving the stored image
+     * @throws IOException if the image cannot be read or stored, or is larger than the maximum size
+     */
+    @Override
+    public String store(InputStream content) throws IOException {
+        MessageDigest digest = newDigest();
+        Path temporary = Files.createTempFile(directory, "upload-", ".tmp");
+        try {
+            try (InputStream limited = new DigestInputStream(new LimitedInputStream(content, maxImageBytes), digest)) {
+                Files.copy(limited, temporary, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String name = HexFormat.of().formatHex(digest.digest());
+            Path target = directory.resolve(name);
+            if (Files.exists(target)) {
+                return baseUrl + "/" + name;
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+            submitThumbnail(name, target);
+            return baseUrl + "/" + name;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Resolves a stored image, or its thumbnail when the name ends with "-thumb".
+     *
+     * @param name the name of the image, as in the URL returned by store
+     * @return the path of the image file, or null if the name is not one of an image
+     */
+    public Path resolve(String name) {
+        if (!IMAGE_NAME.matcher(name).matches()) {
+            return null;
+        }
+        return directory.resolve(name);
+    }
+
+    /**
+     * Stops the thumbnail workers. Images stored without thumbnail are served in full size.
+     */
+    @PreDestroy
+    public void shutdown() {
+        thumbnailExecutor.shutdownNow();
+    }
+
+    private void submitThumbnail(String name, Path source) {
+        try {
+            thumbnailExecutor.execute(() -> {
+                try {
+                    writeThumbnail(source, directory.resolve(name + THUMBNAIL_SUFFIX));
+                } catch (IOException | RuntimeException ex) {
+                    LOGGER.warn("Could not generate the thumbnail of image {}", name, ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            LOGGER.warn("Thumbnail queue is full, image {} is served without thumbnail", name);
+        }
+    }
+
+    /**
+     * Writes a thumbnail fitting in the thumbnail size, keeping the aspect ratio.
+     * The source is decoded with the largest subsampling that keeps it at least twice the thumbnail size.
+     */
+    private void writeThumbnail(Path source, Path target) throws IOException {
+        BufferedImage decoded;
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int largest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int subsampling = Math.max(1, largest / (thumbnailSize * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                decoded = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        double scale = Math.min(1.0, (double) thumbnailSize / Math.max(decoded.getWidth(), decoded.getHeight()));
+        int width = Math.max(1, (int) Math.round(decoded.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(decoded.getHeight() * scale));
+        BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = thumbnail.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(decoded, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        Path temporary = Files.createTempFile(directory, "thumb-", ".tmp");
+        try {
+            ImageIO.write(thumbnail, "png", temporary.toFile());
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is not available", ex);
+        }
+    }
+
+    /**
+     * Input stream failing once more than the maximum number of bytes are read. Closing it does not close the source.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.remaining = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                consume(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                consume(count);
+            }
+            return count;
+        }
+
+        @Override
+        public void close() {
+            // The caller owns the source stream
+        }
+
+        private void consume(long count) throws IOException {
+            remaining -= count;
+            if (remaining < 0) {
+                throw new IOException("Image is larger than the maximum size");
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.hcmus.demo.image;
+
+import com.hcmus.demo.model.StoredImage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository interface for StoredImage entities, the persistent digest index of the hosted images.
+ */
+@Repository
+public interface StoredImageRepository extends JpaRepository<StoredImage, String> {
+}
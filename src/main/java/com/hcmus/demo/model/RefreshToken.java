@@ -12,9 +12,17 @@ import java.util.Date;
  * Entity class representing a refresh token.
  * This class is mapped to the "refresh_tokens" table in the database.
  * It includes fields for the token ID, token string, associated user, and expiry time.
+ * Tokens are issued as "selector.verifier": the selector is stored in clear and indexed,
+ * the token column holds the SHA-256 hash of the verifier. Rows without a selector
+ * are legacy tokens whose token column holds a BCrypt hash of the whole token.
+ * Every refresh consumes the presented token and issues its successor in the same family;
+ * consumed rows are kept until the next rotation so that a replay can be detected.
  */
 @Entity
-@Table(name = "refresh_tokens")
+@Table(name = "refresh_tokens", indexes = {
+        @Index(name = "idx_refresh_tokens_family", columnList = "family_id"),
+        @Index(name = "idx_refresh_tokens_expiry", columnList = "expiry_time, id")
+})
 @Data
 @RequiredArgsConstructor
 @ToString
@@ -27,9 +35,18 @@ public class RefreshToken {
     @Column(unique = true, nullable = false, length = 256)
     private String token;
 
-    @ManyToOne
+    @Column(unique = true, length = 32)
+    private String selector;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
+    @ToString.Exclude
     private User u;
 
     private Date expiryTime;
-}
\ No newline at end of file
+
+    @Column(length = 32)
+    private String familyId;
+
+    private Date consumedAt;
+}
@@ -0,0 +1,20 @@
+package com.hcmus.demo.model;
+
+/**
+ * Role of a user, stored on the user and granted as the authority "ROLE_" followed by its name.
+ * Users are registered with USER; ADMIN, which opens the admin and actuator endpoints, is only granted
+ * in the database.
+ */
+public enum Role {
+    USER,
+    ADMIN;
+
+    /**
+     * Returns the authority granted to the users of this role.
+     *
+     * @return the authority of the role
+     */
+    public String authority() {
+        return "ROLE_" + name();
+    }
+}
@@ -0,0 +1,33 @@
+package com.hcmus.demo.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * Entity class representing an image already hosted by the image storage.
+ * This class is mapped to the "stored_images" table in the database.
+ * Each row maps a digest to the hosted URL: "url:" digests are the SHA-256 of a source URL,
+ * "sha256:" digests the SHA-256 of the image bytes, so an image is uploaded once whatever URL it comes from.
+ */
+@Entity
+@Table(name = "stored_images")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredImage {
+    @Id
+    @Column(length = 80)
+    private String digest; // Kind prefix and hex SHA-256 of the source URL or of the content
+
+    @Column(nullable = false, length = 512)
+    private String url; // URL of the hosted image
+
+    private long sizeBytes; // Size of the image, i.e. the bytes saved on every hit
+
+    @Column(nullable = false)
+    private Date createdAt; // Date when the image was first stored
+}
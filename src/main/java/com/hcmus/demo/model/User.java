@@ -2,14 +2,23 @@ package com.hcmus.demo.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.util.Date;
 
 /**
  * Entity class representing a User in the system.
  * This class is mapped to the "User" table in the database.
+ * Usernames and emails are unique through named constraints, so that a duplicate insert can be reported
+ * as the duplicate username or email it is.
  */
 @Entity
+@Table(uniqueConstraints = {
+        @UniqueConstraint(name = User.UK_USERNAME, columnNames = "username"),
+        @UniqueConstraint(name = User.UK_EMAIL, columnNames = "email")
+}, indexes = {
+        @Index(name = "idx_user_created_at", columnList = "created_at, id")
+})
 @Getter
 @Setter
 @AllArgsConstructor
@@ -17,14 +26,18 @@ import java.util.Date;
 @ToString
 @Builder
 public class User {
+    public static final String UK_USERNAME = "uk_user_username"; // Unique constraint on the username
+    public static final String UK_EMAIL = "uk_user_email"; // Unique constraint on the email
+    public static final String UNUSABLE_PASSWORD = "!"; // Password of federated users, matched by no password
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id; // Unique identifier for the user
 
-    @Column(unique = true, nullable = false)
+    @Column(nullable = false)
     private String username; // Username of the user, must be unique
 
-    @Column(unique = true, nullable = false)
+    @Column(nullable = false)
     private String email; // Email of the user, must be unique
 
     @Column(nullable = false)
@@ -35,4 +48,14 @@ public class User {
 
     @Column(nullable = false)
     private Date createdAt; // Date when the user was created
+
+    @Enumerated(EnumType.STRING)
+    @ColumnDefault("'USER'")
+    @Column(nullable = false)
+    @Builder.Default
+    private Role role = Role.USER; // Role of the user, granted as its authority
+
+    @Version
+    @Column(nullable = false)
+    private long version; // Incremented on every update, identifies the state of the user
 }
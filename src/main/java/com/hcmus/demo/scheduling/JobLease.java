@@ -0,0 +1,17 @@
+package com.hcmus.demo.scheduling;
+
+import java.time.Instant;
+
+/**
+ * Lease on a scheduled job, held by one node of the cluster until it is released or expires.
+ * The fencing token grows with every acquisition, so a node whose lease has been taken over
+ * can tell that it must stop writing.
+ *
+ * @param jobName      the name of the job
+ * @param holder       the id of the node holding the lease
+ * @param fencingToken the fencing token of the lease
+ * @param lockedAt     the time the lease was acquired
+ * @param lockUntil    the time the lease expires if it is not released
+ */
+public record JobLease(String jobName, String holder, long fencingToken, Instant lockedAt, Instant lockUntil) {
+}
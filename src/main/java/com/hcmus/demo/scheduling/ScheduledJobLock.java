@@ -0,0 +1,211 @@
+package com.hcmus.demo.scheduling;
+
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Cluster-wide lock for scheduled jobs, backed by the "scheduler_lock" table of the application datasource.
+ * A node runs a job only while it holds the job's lease. A lease expires after its lock-at-most duration,
+ * so a job is not blocked forever when its holder dies, and each acquisition increments a fencing token
+ * that the job can check before writing.
+ */
+@Component
+public class ScheduledJobLock {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScheduledJobLock.class);
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS scheduler_lock ("
+            + "name VARCHAR(64) NOT NULL PRIMARY KEY, "
+            + "lock_until TIMESTAMP(3) NOT NULL, "
+            + "locked_at TIMESTAMP(3) NOT NULL, "
+            + "locked_by VARCHAR(255) NOT NULL, "
+            + "fencing_token BIGINT NOT NULL)";
+    private static final String TAKE_EXPIRED = "UPDATE scheduler_lock "
+            + "SET lock_until = ?, locked_at = ?, locked_by = ?, fencing_token = fencing_token + 1 "
+            + "WHERE name = ? AND lock_until <= ?";
+    private static final String INSERT = "INSERT INTO scheduler_lock (name, lock_until, locked_at, locked_by, fencing_token) "
+            + "VALUES (?, ?, ?, ?, 1)";
+    private static final String SELECT_TOKEN = "SELECT fencing_token FROM scheduler_lock WHERE name = ? AND locked_by = ?";
+    private static final String COUNT_HELD = "SELECT COUNT(*) FROM scheduler_lock "
+            + "WHERE name = ? AND locked_by = ? AND fencing_token = ? AND lock_until > ?";
+    private static final String RELEASE = "UPDATE scheduler_lock SET lock_until = ? "
+            + "WHERE name = ? AND locked_by = ? AND fencing_token = ?";
+    private static final String SELECT_ALL = "SELECT name, locked_by, fencing_token, locked_at, lock_until FROM scheduler_lock";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Getter
+    private final String nodeId; // The id of this node in the lock table
+
+    private final Map<String, JobStats> stats = new ConcurrentHashMap<>();
+
+    public ScheduledJobLock(DataSource dataSource, @Value("${app.scheduling.node-id:}") String nodeId) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.nodeId = nodeId.isBlank() ? defaultNodeId() : nodeId;
+    }
+
+    /**
+     * Creates the lock table if it does not exist yet.
+     */
+    @PostConstruct
+    void createTable() {
+        jdbcTemplate.execute(CREATE_TABLE);
+    }
+
+    /**
+     * Runs the task if this node can acquire the lease of the job, and releases the lease afterwards.
+     * The lease is kept for at least lockAtLeastFor, so other nodes skip the job for the rest of the interval.
+     *
+     * @param jobName        the name of the job
+     * @param lockAtMostFor  how long the lease lasts if this node dies while running the task
+     * @param lockAtLeastFor how long the lease lasts at least, counted from its acquisition
+     * @param task           the task, receiving the lease so that it can check it is still held
+     * @return true if the task ran on this node
+     */
+    public boolean runLocked(String jobName, Duration lockAtMostFor, Duration lockAtLeastFor, Consumer<JobLease> task) {
+        JobStats jobStats = stats.computeIfAbsent(jobName, name -> new JobStats());
+        Optional<JobLease> acquired = tryAcquire(jobName, lockAtMostFor);
+        if (acquired.isEmpty()) {
+            jobStats.skipped.incrementAndGet();
+            LOGGER.debug("Job {} is locked by another node, skipping", jobName);
+            return false;
+        }
+
+        JobLease lease = acquired.get();
+        long start = System.nanoTime();
+        String outcome = "FAILED";
+        try {
+            task.accept(lease);
+            outcome = "SUCCEEDED";
+        } finally {
+            release(lease, lockAtLeastFor);
+            jobStats.record(lease, Duration.ofNanos(System.nanoTime() - start), outcome);
+        }
+        return true;
+    }
+
+    /**
+     * Tries to acquire the lease of a job: takes the row over if its lease has expired,
+     * or creates it if the job has never been locked.
+     *
+     * @param jobName       the name of the job
+     * @param lockAtMostFor how long the lease lasts if it is not released
+     * @return the lease, or empty if another node holds it
+     */
+    public Optional<JobLease> tryAcquire(String jobName, Duration lockAtMostFor) {
+        Instant now = Instant.now();
+        Instant lockUntil = now.plus(lockAtMostFor);
+        Timestamp nowTimestamp = Timestamp.from(now);
+        Timestamp untilTimestamp = Timestamp.from(lockUntil);
+
+        int updated = jdbcTemplate.update(TAKE_EXPIRED, untilTimestamp, nowTimestamp, nodeId, jobName, nowTimestamp);
+        if (updated == 0) {
+            try {
+                jdbcTemplate.update(INSERT, jobName, untilTimestamp, nowTimestamp, nodeId);
+            } catch (DataIntegrityViolationException ex) {
+                return Optional.empty();
+            }
+        }
+
+        Long fencingToken = jdbcTemplate.queryForObject(SELECT_TOKEN, Long.class, jobName, nodeId);
+        return Optional.of(new JobLease(jobName, nodeId, fencingToken, now, lockUntil));
+    }
+
+    /**
+     * Checks that the lease is still held by this node, i.e. that it has neither expired nor been taken over.
+     *
+     * @param lease the lease to check
+     * @return true if the lease is still valid
+     */
+    public boolean isHeld(JobLease lease) {
+        Integer count = jdbcTemplate.queryForObject(COUNT_HELD, Integer.class,
+                lease.jobName(), lease.holder(), lease.fencingToken(), Timestamp.from(Instant.now()));
+        return count != null && count > 0;
+    }
+
+    /**
+     * Releases the lease, keeping it until lockAtLeastFor after its acquisition.
+     *
+     * @param lease          the lease to release
+     * @param lockAtLeastFor how long the lease lasts at least, counted from its acquisition
+     */
+    public void release(JobLease lease, Duration lockAtLeastFor) {
+        Instant earliest = lease.lockedAt().plus(lockAtLeastFor);
+        Instant now = Instant.now();
+        Instant lockUntil = earliest.isAfter(now) ? earliest : now;
+        jdbcTemplate.update(RELEASE, Timestamp.from(lockUntil), lease.jobName(), lease.holder(), lease.fencingToken());
+    }
+
+    /**
+     * Reads the current lease of every job from the lock table.
+     *
+     * @return the leases, expired or not
+     */
+    public List<JobLease> currentLeases() {
+        return jdbcTemplate.query(SELECT_ALL, (rs, rowNum) -> new JobLease(
+                rs.getString("name"),
+                rs.getString("locked_by"),
+                rs.getLong("fencing_token"),
+                rs.getTimestamp("locked_at").toInstant(),
+                rs.getTimestamp("lock_until").toInstant()));
+    }
+
+    /**
+     * Returns the run statistics of the jobs on this node.
+     *
+     * @return the statistics by job name
+     */
+    public Map<String, JobStats> getStats() {
+        return Map.copyOf(stats);
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException ex) {
+            host = "unknown";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * Run statistics of a job on this node.
+     */
+    @Getter
+    public static class JobStats {
+        private final AtomicLong runs = new AtomicLong(); // Runs on this node
+        private final AtomicLong skipped = new AtomicLong(); // Triggers skipped because another node held the lease
+        private volatile Instant lastStartedAt; // Start of the last run on this node
+        private volatile long lastDurationMillis; // Duration of the last run on this node
+        private volatile String lastOutcome; // SUCCEEDED or FAILED
+        private volatile long lastFencingToken; // Fencing token of the last run on this node
+
+        private void record(JobLease lease, Duration duration, String outcome) {
+            runs.incrementAndGet();
+            lastStartedAt = lease.lockedAt();
+            lastDurationMillis = duration.toMillis();
+            lastOutcome = outcome;
+            lastFencingToken = lease.fencingToken();
+        }
+    }
+}
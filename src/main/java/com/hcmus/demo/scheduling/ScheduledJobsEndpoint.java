@@ -0,0 +1,50 @@
+package com.hcmus.demo.scheduling;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint exposing the cluster leases of the scheduled jobs and their runs on this node.
+ * Available at /actuator/scheduledjobs when exposed, to the users with the ADMIN role.
+ */
+@Component
+@Endpoint(id = "scheduledjobs")
+@RequiredArgsConstructor
+public class ScheduledJobsEndpoint {
+    private final ScheduledJobLock jobLock;
+
+    /**
+     * Returns, for every job, the current lease holder and the runs of this node.
+     *
+     * @return the state of the scheduled jobs
+     */
+    @ReadOperation
+    public Map<String, Object> scheduledJobs() {
+        Map<String, Map<String, Object>> jobs = new LinkedHashMap<>();
+        for (JobLease lease : jobLock.currentLeases()) {
+            Map<String, Object> job = jobs.computeIfAbsent(lease.jobName(), name -> new LinkedHashMap<>());
+            job.put("holder", lease.holder());
+            job.put("fencingToken", lease.fencingToken());
+            job.put("lockedAt", lease.lockedAt());
+            job.put("lockUntil", lease.lockUntil());
+        }
+        jobLock.getStats().forEach((name, stats) -> {
+            Map<String, Object> job = jobs.computeIfAbsent(name, key -> new LinkedHashMap<>());
+            job.put("runs", stats.getRuns().get());
+            job.put("skipped", stats.getSkipped().get());
+            job.put("lastStartedAt", stats.getLastStartedAt());
+            job.put("lastDurationMillis", stats.getLastDurationMillis());
+            job.put("lastOutcome", stats.getLastOutcome());
+        });
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("node", jobLock.getNodeId());
+        result.put("jobs", jobs);
+        return result;
+    }
+}
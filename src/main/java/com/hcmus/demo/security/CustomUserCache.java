@@ -0,0 +1,54 @@
+package com.hcmus.demo.security;
+
+import com.hcmus.demo.model.User;
+import com.hcmus.demo.user.UserLookupCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+/**
+ * Spring Security user cache backed by the user lookup cache.
+ * DaoAuthenticationProvider checks this cache before loading the user, and reloads the user
+ * from the database if the password does not match the cached hash.
+ */
+@Component
+public class CustomUserCache implements UserCache {
+
+    @Autowired
+    private UserLookupCache userLookupCache;
+
+    /**
+     * Returns the cached user details of the given username.
+     *
+     * @param username the username of the user
+     * @return the user details, or null if the user is not cached
+     */
+    @Override
+    public UserDetails getUserFromCache(String username) {
+        User user = userLookupCache.getIfPresentByUsername(username);
+        return user == null ? null : new CustomUserDetail(user);
+    }
+
+    /**
+     * Caches the user loaded by the user details service.
+     *
+     * @param user the user details
+     */
+    @Override
+    public void putUserInCache(UserDetails user) {
+        if (user instanceof CustomUserDetail customUserDetail) {
+            userLookupCache.put(customUserDetail.getUser());
+        }
+    }
+
+    /**
+     * Removes the user from the cache.
+     *
+     * @param username the username of the user
+     */
+    @Override
+    public void removeUserFromCache(String username) {
+        userLookupCache.evictByUsername(username);
+    }
+}
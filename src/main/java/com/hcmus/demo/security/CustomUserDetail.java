@@ -8,10 +8,10 @@ import com.hcmus.demo.model.User;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import java.util.Collection;
-import java.util.List;
 
 @Setter
 @Getter
@@ -29,13 +29,13 @@ public class CustomUserDetail implements UserDetails {
     }
 
     /**
-     * Returns the authorities granted to the user.
+     * Returns the authorities granted to the user: the authority of its role.
      *
      * @return a collection of granted authorities
      */
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
-        return List.of();
+        return AuthorityUtils.createAuthorityList(user.getRole().authority());
     }
 
     /**
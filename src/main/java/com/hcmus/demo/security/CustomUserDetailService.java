@@ -1,28 +1,36 @@
 package com.hcmus.demo.security;
 
 import com.hcmus.demo.model.User;
+import com.hcmus.demo.user.UserLookupCache;
 import com.hcmus.demo.user.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 /**
  * Service class for loading user-specific data.
- * This class implements the UserDetailsService interface to provide a custom user details service.
+ * This class implements the UserDetailsService interface to provide a custom user details service,
+ * and UserDetailsPasswordService to store a password rehashed after a successful login.
  */
 @Service
-public class CustomUserDetailService implements UserDetailsService {
+public class CustomUserDetailService implements UserDetailsService, UserDetailsPasswordService {
 
     @Autowired
     private UserRepository repo;
 
+    @Autowired
+    private UserLookupCache userLookupCache;
+
     private static final String USER_NOT_FOUND_MSG = "User with username %s not found";
 
     /**
      * Loads the user by username.
      * This method is used by Spring Security to retrieve user details during authentication.
+     * It always reads the database: Spring Security checks the user cache before calling it,
+     * and calls it again when the cached password did not match.
      *
      * @param username the username identifying the user whose data is required
      * @return a fully populated user record (never null)
@@ -37,4 +45,25 @@ public class CustomUserDetailService implements UserDetailsService {
         return new CustomUserDetail(u);
     }
 
+    /**
+     * Stores the password of the user, rehashed with the current encoder parameters.
+     * This method is called by Spring Security after a successful login when the stored hash needs an upgrade.
+     *
+     * @param user        the authenticated user
+     * @param newPassword the new encoded password
+     * @return the user details with the new password
+     * @throws UsernameNotFoundException if the user no longer exists
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        User u = repo.findByUsername(user.getUsername());
+        if (u == null) {
+            throw new UsernameNotFoundException(String.format(USER_NOT_FOUND_MSG, user.getUsername()));
+        }
+        u.setPassword(newPassword);
+        User saved = repo.save(u);
+        userLookupCache.put(saved);
+        return new CustomUserDetail(saved);
+    }
+
 }
\ No newline at end of file
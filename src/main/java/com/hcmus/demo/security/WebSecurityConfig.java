@@ -1,9 +1,15 @@
 package com.hcmus.demo.security;
 
+import com.hcmus.demo.model.Role;
 import com.hcmus.demo.security.jwt.JwtTokenFilter;
+import com.hcmus.demo.security.password.BulkheadPasswordEncoder;
+import com.hcmus.demo.security.password.CalibratedBCryptPasswordEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -11,8 +17,8 @@ import org.springframework.security.authentication.dao.DaoAuthenticationProvider
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.access.intercept.AuthorizationFilter;
@@ -20,7 +26,9 @@ import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Map;
 
 /**
  * Configuration class for Spring Security.
@@ -30,43 +38,99 @@ import java.util.Arrays;
 @EnableWebSecurity
 @RequiredArgsConstructor
 public class WebSecurityConfig {
+    private static final String BCRYPT_ID = "bcrypt";
+
+    /**
+     * Routes that never require authentication. The JWT filter is skipped on these routes.
+     */
+    public static final String[] PUBLIC_PATHS = {
+            "/user/register", "/user/check-unique-email/**", "/user/check-unique-username/**", "/auth/**",
+            "/.well-known/**", "/images/**", "/actuator/health/**"
+    };
 
     @Autowired
     JwtTokenFilter jwtFilter;
 
+    @Autowired
+    CustomUserCache userCache;
+
     private final CorsConfigurationSource corsConfigurationSource;
 
+    @Value("${app.security.password.encoder:bcrypt}")
+    private String passwordEncoderMode; // bcrypt (default strength) or calibrated (strength benchmarked at startup)
+
+    @Value("${app.security.password.calibration.budget-ms:50}")
+    private long calibrationBudgetMillis;
+
+    @Value("${app.security.password.calibration.min-strength:10}")
+    private int calibrationMinStrength;
+
+    @Value("${app.security.password.calibration.max-strength:16}")
+    private int calibrationMaxStrength;
+
     /**
      * Bean for password encoding using BCrypt.
+     * Hashing runs on a bounded executor so that login and registration bursts cannot starve other requests.
      *
+     * @param threads       the number of hashing threads
+     * @param queueCapacity the number of requests allowed to wait for a hashing thread
+     * @param timeoutMillis the maximum wait for a hash before answering 503
+     * @param meterRegistry the registry of the hashing metrics
      * @return the password encoder
      */
     @Bean
-    PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    PasswordEncoder passwordEncoder(@Value("${app.security.password.hashing.threads:2}") int threads,
+                                    @Value("${app.security.password.hashing.queue-capacity:32}") int queueCapacity,
+                                    @Value("${app.security.password.hashing.timeout-ms:2000}") long timeoutMillis,
+                                    MeterRegistry meterRegistry) {
+        return new BulkheadPasswordEncoder(hashingEncoder(), threads, queueCapacity, timeoutMillis, meterRegistry);
+    }
+
+    /**
+     * Creates the encoder doing the hashing, according to "app.security.password.encoder".
+     * In calibrated mode, new hashes are prefixed with "{bcrypt}" and hashed at the calibrated strength;
+     * hashes without a prefix, stored before, are still checked as BCrypt and rehashed on the next login.
+     *
+     * @return the hashing encoder
+     */
+    private PasswordEncoder hashingEncoder() {
+        if (!"calibrated".equalsIgnoreCase(passwordEncoderMode)) {
+            return new BCryptPasswordEncoder();
+        }
+
+        CalibratedBCryptPasswordEncoder calibrated = CalibratedBCryptPasswordEncoder.calibrate(
+                Duration.ofMillis(calibrationBudgetMillis), calibrationMinStrength, calibrationMaxStrength);
+        DelegatingPasswordEncoder delegating = new DelegatingPasswordEncoder(BCRYPT_ID, Map.of(BCRYPT_ID, calibrated));
+        delegating.setDefaultPasswordEncoderForMatches(calibrated);
+        return delegating;
     }
 
     /**
      * Bean for custom user details service.
+     * It also stores the passwords rehashed after a successful login.
      *
      * @return the user details service
      */
     @Bean
-    UserDetailsService userDetailsService() {
+    CustomUserDetailService userDetailsService() {
         return new CustomUserDetailService();
     }
 
     /**
      * Bean for DAO authentication provider.
-     * This provider uses the custom user details service and password encoder.
+     * This provider uses the custom user details service and password encoder,
+     * and looks the user up in the user cache before loading it from the database.
      *
+     * @param passwordEncoder the password encoder
      * @return the DAO authentication provider
      */
     @Bean
-    DaoAuthenticationProvider authenticationProvider() {
+    DaoAuthenticationProvider authenticationProvider(PasswordEncoder passwordEncoder) {
         DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
-        authProvider.setPasswordEncoder(passwordEncoder());
+        authProvider.setPasswordEncoder(passwordEncoder);
         authProvider.setUserDetailsService(userDetailsService());
+        authProvider.setUserDetailsPasswordService(userDetailsService());
+        authProvider.setUserCache(userCache);
 
         return authProvider;
     }
@@ -86,6 +150,10 @@ public class WebSecurityConfig {
     /**
      * Configures the security filter chain.
      * Sets up CORS, CSRF, exception handling, and JWT filter.
+     * The admin endpoints and the actuator endpoints other than health are restricted to the users with the ADMIN role,
+     * stored on the user and granted by the user details service and the JWT filter.
+     * Async and error dispatches are permitted: the request they continue was authorized on its first dispatch,
+     * and the JWT filter, which runs once per request, does not authenticate them again.
      *
      * @param http the HTTP security configuration
      * @return the security filter chain
@@ -96,9 +164,10 @@ public class WebSecurityConfig {
         http
                 .cors(cors -> cors.configurationSource(corsConfigurationSource))
                 .authorizeHttpRequests(auth ->
-                        auth.requestMatchers("/user/register", "/user/check-unique-email/**", "/user/check-unique-username/**").permitAll()
-                                .requestMatchers("/auth/**").permitAll()
+                        auth.dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
+                                .requestMatchers(PUBLIC_PATHS).permitAll()
                                 .requestMatchers("/user/**").authenticated()
+                                .requestMatchers("/admin/**", "/actuator/**").hasRole(Role.ADMIN.name())
                                 .anyRequest().permitAll())
                 .csrf(csrf -> csrf.disable())
                 .exceptionHandling(exh -> exh.authenticationEntryPoint(
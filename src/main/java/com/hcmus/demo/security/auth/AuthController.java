@@ -1,6 +1,7 @@
 package com.hcmus.demo.security.auth;
 
 import com.hcmus.demo.security.CustomUserDetail;
+import com.hcmus.demo.exception_handler.exception.ServiceUnavailableException;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -12,9 +13,13 @@ import org.springframework.security.core.Authentication;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * REST controller for handling authentication requests.
  * This controller provides endpoints for user login and token generation.
+ * The endpoints run on the authentication executor and return the future of their result, so the request thread
+ * is not held while the identity provider, the password hashing or the database is awaited.
  */
 @RestController
 @RequestMapping("/auth")
@@ -26,56 +31,67 @@ public class AuthController {
     private TokenService tokenService;
     @Autowired
     private  AuthenticationService authenticationService;
+    @Autowired
+    private AuthenticationExecutor authenticationExecutor;
 
     /**
      * Authenticates the user and generates an access token.
      *
      * @param request the authentication request containing username and password
-     * @return a ResponseEntity containing the authentication response with the access token
+     * @return the future authentication response with the access token
      */
     @PostMapping("/login")
-    public AuthResponse getAccessToken(@RequestBody @Valid AuthRequest request) {
+    public CompletableFuture<AuthResponse> getAccessToken(@RequestBody @Valid AuthRequest request) {
         String username = request.getUsername();
         String password = request.getPassword();
 
-        Authentication authentication = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(username, password));
+        return authenticationExecutor.submit(() -> {
+            Authentication authentication = authenticationManager.authenticate(
+                    new UsernamePasswordAuthenticationToken(username, password));
 
-        CustomUserDetail userDetails = (CustomUserDetail) authentication.getPrincipal();
+            CustomUserDetail userDetails = (CustomUserDetail) authentication.getPrincipal();
 
-        return tokenService.generateToken(userDetails.getUser());
+            return tokenService.generateToken(userDetails.getUser());
+        });
     }
 
     /**
      * Handles POST requests for Google login authentication.
      *
      * @param code the authorization code from Google's OAuth 2.0 flow.
-     * @return a ResponseEntity containing the authentication result (e.g., user info or token).
-     * @throws Exception if authentication fails or communication with Google encounters an issue.
+     * @return the future ResponseEntity containing the authentication result (e.g., user info or token),
+     * failing if authentication fails or communication with Google encounters an issue.
      *
      * This method exchanges the provided code for access and ID tokens via the
      * `authenticationService`, validates the user's identity, and returns the result.
      */
     @PostMapping("/outbound/authentication")
-    ResponseEntity<?> outboundAuthenticate(@RequestParam("code") String code) throws Exception {
-        var result = authenticationService.outboundAuthentication(code);
-        return ResponseEntity.ok().body(result);
+    CompletableFuture<ResponseEntity<?>> outboundAuthenticate(@RequestParam("code") String code) {
+        return authenticationExecutor.submit(() -> {
+            var result = authenticationService.outboundAuthentication(code);
+            return ResponseEntity.ok().body(result);
+        });
     }
 
     /**
      * Generates a new access token using a refresh token.
      *
      * @param request the refresh token request containing the refresh token
-     * @return a ResponseEntity containing the authentication response with the new access token
+     * @return the future authentication response with the new access token
      */
     @PostMapping("/refresh-token")
-    public AuthResponse getRefreshToken(@RequestBody @Valid RefreshTokenRequest request)  {
-        try {
-            return tokenService.refreshTokens(request);
-        } catch (Exception e) {
-            // Handle exception and return unauthorized status
-            throw new BadCredentialsException("Invalid refresh token");
-        }
+    public CompletableFuture<AuthResponse> getRefreshToken(@RequestBody @Valid RefreshTokenRequest request)  {
+        return authenticationExecutor.submit(() -> {
+            try {
+                return tokenService.refreshTokens(request);
+            } catch (ServiceUnavailableException e) {
+                // Not a bad token: the password hashing or the token store is saturated, the client should retry later
+                throw e;
+            } catch (Exception e) {
+                // Handle exception and return unauthorized status
+                throw new BadCredentialsException("Invalid refresh token");
+            }
+        });
     }
 
 }
\ No newline at end of file
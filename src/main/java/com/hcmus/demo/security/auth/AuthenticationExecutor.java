@@ -0,0 +1,143 @@
+package com.hcmus.demo.security.auth;
+
+import com.hcmus.demo.config.DaemonThreadFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executor of the authentication endpoints, which wait on the identity provider, the password hashing executor
+ * and the database. The endpoints return the future of their work, so the request thread goes back to the container
+ * pool while the work runs here, on a fixed pool fed by a bounded queue.
+ * A request that finds the queue full, or is still queued at its deadline, fails with
+ * AuthenticationUnavailableException (503). A request already running at its deadline is answered with its own
+ * result, bounded by the timeouts of the clients it calls: failing it would hide work already done, such as a
+ * rotated refresh token, and the retry of the client would then be taken for a reuse.
+ * With async execution disabled, the work runs on the request thread as before.
+ */
+@Component
+public class AuthenticationExecutor {
+    private static final String SATURATED_MSG = "Too many authentication requests, please retry later";
+    private static final String DEADLINE_MSG = "Authentication request timed out, please retry later";
+
+    private final boolean enabled;
+    private final long deadlineMillis;
+    private final long retryAfterSeconds;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService deadlineScheduler; // Fails the requests still queued at their deadline
+    private final Timer waitTimer;
+    private final Counter saturatedCounter;
+    private final Counter deadlineCounter;
+
+    public AuthenticationExecutor(MeterRegistry meterRegistry,
+                                  @Value("${app.auth.async.enabled:true}") boolean enabled,
+                                  @Value("${app.auth.async.threads:32}") int threads,
+                                  @Value("${app.auth.async.queue-capacity:256}") int queueCapacity,
+                                  @Value("${app.auth.async.deadline-ms:10000}") long deadlineMillis) {
+        this.enabled = enabled;
+        this.deadlineMillis = deadlineMillis;
+        this.retryAfterSeconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(deadlineMillis));
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new DaemonThreadFactory("authentication"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.deadlineScheduler = Executors.newSingleThreadScheduledExecutor(
+                new DaemonThreadFactory("authentication-deadline"));
+
+        this.waitTimer = Timer.builder("auth.executor.wait")
+                .description("Time spent by authentication requests waiting for a thread")
+                .register(meterRegistry);
+        this.saturatedCounter = rejectedCounter(meterRegistry, "saturated");
+        this.deadlineCounter = rejectedCounter(meterRegistry, "deadline");
+        Gauge.builder("auth.executor.queue.depth", executor.getQueue(), BlockingQueue::size)
+                .description("Authentication requests waiting for a thread")
+                .register(meterRegistry);
+        Gauge.builder("auth.executor.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Authentication requests running")
+                .register(meterRegistry);
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("auth.executor.rejected")
+                .description("Authentication requests rejected by reason")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the work of an authentication request.
+     *
+     * @param task the work of the request
+     * @return the future result of the work; it fails with AuthenticationUnavailableException if the executor is
+     * saturated or the deadline passes before the work starts, and with the exception of the task if it fails
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (!enabled) {
+            run(task, result);
+            return result;
+        }
+
+        long queuedAt = System.nanoTime();
+        AtomicBoolean claimed = new AtomicBoolean(); // Taken either by the worker starting the task or by the deadline
+        Future<?> work;
+        try {
+            work = executor.submit(() -> {
+                if (claimed.compareAndSet(false, true)) {
+                    waitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                    run(task, result);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            saturatedCounter.increment();
+            result.completeExceptionally(new AuthenticationUnavailableException(SATURATED_MSG, retryAfterSeconds));
+            return result;
+        }
+
+        ScheduledFuture<?> deadline = deadlineScheduler.schedule(() -> {
+            if (claimed.compareAndSet(false, true)) { // Still queued: the task never runs
+                work.cancel(false);
+                deadlineCounter.increment();
+                result.completeExceptionally(new AuthenticationUnavailableException(DEADLINE_MSG, retryAfterSeconds));
+            }
+        }, deadlineMillis, TimeUnit.MILLISECONDS);
+        result.whenComplete((value, ex) -> deadline.cancel(false));
+        return result;
+    }
+
+    /**
+     * Stops the workers. Requests still queued are not answered.
+     */
+    @PreDestroy
+    public void shutdown() {
+        deadlineScheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private static <T> void run(Callable<T> task, CompletableFuture<T> result) {
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            result.complete(task.call());
+        } catch (Exception ex) {
+            result.completeExceptionally(ex);
+        }
+    }
+}
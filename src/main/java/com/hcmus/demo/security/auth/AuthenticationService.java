@@ -1,28 +1,19 @@
 package com.hcmus.demo.security.auth;
 
+import com.hcmus.demo.image.AvatarIngestionService;
 import com.hcmus.demo.model.User;
-import com.hcmus.demo.security.CustomUserDetail;
 import com.hcmus.demo.security.httpclient.OutboundIdentityClient;
 import com.hcmus.demo.security.httpclient.OutboundUserClient;
 import com.hcmus.demo.user.UserService;
-import com.hcmus.demo.util.CloudinaryUtil;
 import lombok.RequiredArgsConstructor;
 
 import lombok.experimental.NonFinal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.stereotype.Service;
 
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.UUID;
-
 /**
  * Service class for handling authentication operations.
  * This class provides methods for authenticating users with an external identity provider and managing user tokens.
@@ -33,10 +24,10 @@ public class AuthenticationService {
     private final OutboundIdentityClient outboundIdentityClient;
     private final OutboundUserClient outboundUserClient;
     private final UserService userService;
-    private final AuthenticationManager authenticationManager;
     private final TokenService tokenService;
     private final Logger LOGGER = LoggerFactory.getLogger(AuthenticationService.class);
-    private final CloudinaryUtil cloudinaryUtil;
+    private final AvatarIngestionService avatarIngestionService;
+    private final IdTokenVerifier idTokenVerifier;
 
     @NonFinal
     @Value("${outbound.identity.client-id}")
@@ -55,13 +46,23 @@ public class AuthenticationService {
 
     private final String PROFILE_FOLDER = "profile";
 
+    private static final String UNVERIFIED_EMAIL_MSG = "The identity provider has not verified the email address";
+
 
     /**
      * Authenticates a user using an authorization code.
      * This method exchanges the authorization code for an access token, retrieves user information, and generates a token for the user.
+     * The user information is read from the ID token of the exchange, verified locally against the provider's signing keys;
+     * the userinfo endpoint is only called when the provider returns no ID token.
+     * The email address must be verified by the provider: it links the sign-in to an existing account,
+     * and would otherwise let anyone claiming the address take that account over, or reserve it.
+     * A first-time user is created without a usable password and gets its tokens from the saved user.
+     * An existing user still holding the password federated users used to be created with has it retired.
+     * The user's avatar is queued for ingestion into the image storage and does not delay the response.
      *
      * @param code the authorization code received from the external identity provider
      * @return the authentication response containing the generated token
+     * @throws BadCredentialsException if the provider has not verified the email address
      * @throws Exception if an error occurs during the authentication process
      */
     public AuthResponse outboundAuthentication(String code) throws Exception {
@@ -72,30 +73,34 @@ public class AuthenticationService {
                 .redirectUri(REDIRECT_URI)
                 .grantType(GRANT_TYPE)
                 .build());
-        OutboundUserResponse userResponse = outboundUserClient.getUserInfo("json", response.getAccessToken());
-
+        OutboundUserResponse userResponse = response.getIdToken() != null
+                ? idTokenVerifier.verify(response.getIdToken())
+                : outboundUserClient.getUserInfo("json", response.getAccessToken());
+        if (!userResponse.isVerifiedEmail()) {
+            throw new BadCredentialsException(UNVERIFIED_EMAIL_MSG);
+        }
 
-        if (!userService.checkUniqueEmail(userResponse.getEmail())) {
-            // Update user profile
-            User user = userService.getUserByEmail(userResponse.getEmail());
-            if(user.getProfile() == null || user.getProfile().isEmpty()) {
-                String imageUrl = userResponse.getPicture();
-                String image = cloudinaryUtil.uploadImageToCloudinary(imageUrl);
-                user.setProfile(image);
+        String picture = userResponse.getPicture();
+        User existingUser = userService.getUserByEmail(userResponse.getEmail());
+        if (existingUser != null) {
+            // Update user profile: the avatar is copied in the background, the source picture is shown meanwhile
+            User user = existingUser;
+            userService.retireLegacyFederatedPassword(user);
+            String profile = user.getProfile();
+            if (profile == null || profile.isEmpty() || profile.equals(picture)) {
+                avatarIngestionService.submit(user.getId(), picture);
+                user.setProfile(picture);
             }
             return tokenService.generateToken(user);
         }
         User user = User.builder()
                 .email(userResponse.getEmail())
                 .username(userResponse.getName())
-                .password("123456")
-                .profile(cloudinaryUtil.uploadImageToCloudinary(userResponse.getPicture()))
+                .profile(picture)
                 .build();
-        userService.saveUser(user);
-        Authentication authentication = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(userResponse.getName(), "123456"));
-        CustomUserDetail userDetails = (CustomUserDetail) authentication.getPrincipal();
-        return tokenService.generateToken(userDetails.getUser());
+        User savedUser = userService.saveFederatedUser(user);
+        avatarIngestionService.submit(savedUser.getId(), picture);
+        return tokenService.generateToken(savedUser);
     }
 
 
@@ -0,0 +1,20 @@
+package com.hcmus.demo.security.auth;
+
+import com.hcmus.demo.exception_handler.exception.ServiceUnavailableException;
+
+/**
+ * Custom exception class for rejected authentication requests.
+ * This exception is thrown when the authentication executor is saturated, or a request misses its deadline.
+ */
+public class AuthenticationUnavailableException extends ServiceUnavailableException {
+
+    /**
+     * Constructs a new AuthenticationUnavailableException with the specified detail message.
+     *
+     * @param message           the detail message
+     * @param retryAfterSeconds the suggested delay before retrying
+     */
+    public AuthenticationUnavailableException(String message, long retryAfterSeconds) {
+        super(message, retryAfterSeconds);
+    }
+}
@@ -22,4 +22,5 @@ public class ExchangeTokenResponse {
     private String refreshToken; // The refresh token which can be used to obtain new access tokens
     private String scope; // The scope of the access token
     private String tokenType; // The type of the token issued (e.g., Bearer)
+    private String idToken; // The signed OpenID Connect ID token describing the user
 }
\ No newline at end of file
@@ -0,0 +1,115 @@
+package com.hcmus.demo.security.auth;
+
+import com.hcmus.demo.security.jwt.HttpJwksSource;
+import com.hcmus.demo.security.jwt.JwtValidationException;
+import com.hcmus.demo.security.jwt.RemoteJwksKeyCache;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.UnsupportedJwtException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.security.Key;
+import java.security.PublicKey;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Verifies the OpenID Connect ID tokens returned by the identity provider's token endpoint.
+ * The signature is checked locally against the provider's signing keys, cached by RemoteJwksKeyCache,
+ * so the user is known from the token exchange alone, without a userinfo request.
+ * The token must be issued by one of the configured issuers, for this client, and not be expired.
+ */
+@Component
+public class IdTokenVerifier {
+    private static final long CLOCK_SKEW_SECONDS = 60;
+    private static final String INVALID_ID_TOKEN_MSG = "Invalid ID token";
+
+    private final RemoteJwksKeyCache keyCache;
+    private final Set<String> issuers;
+    private final JwtParser parser;
+
+    @Autowired
+    public IdTokenVerifier(@Value("${app.security.oidc.jwks-uri:https://www.googleapis.com/oauth2/v3/certs}") URI jwksUri,
+                           @Value("${app.security.oidc.issuers:https://accounts.google.com,accounts.google.com}") Set<String> issuers,
+                           @Value("${outbound.identity.client-id}") String audience,
+                           @Value("${app.security.oidc.jwks-default-max-age:1h}") Duration defaultMaxAge,
+                           @Value("${app.security.oidc.jwks-min-refresh-interval:30s}") Duration minRefreshInterval,
+                           @Value("${app.security.oidc.jwks-fetch-timeout:5s}") Duration fetchTimeout) {
+        this(new RemoteJwksKeyCache(new HttpJwksSource(jwksUri, fetchTimeout), defaultMaxAge, minRefreshInterval,
+                Clock.systemUTC()), issuers, audience);
+    }
+
+    public IdTokenVerifier(RemoteJwksKeyCache keyCache, Set<String> issuers, String audience) {
+        this.keyCache = keyCache;
+        this.issuers = Set.copyOf(issuers);
+        this.parser = Jwts.parser()
+                .keyLocator(new LocatorAdapter<Key>() {
+                    @Override
+                    protected Key locate(JwsHeader header) {
+                        PublicKey key = keyCache.getKey(header.getKeyId());
+                        if (key == null) {
+                            throw new UnsupportedJwtException("Unknown signing key " + header.getKeyId());
+                        }
+                        return key;
+                    }
+                })
+                .requireAudience(audience)
+                .clockSkewSeconds(CLOCK_SKEW_SECONDS)
+                .build();
+    }
+
+    /**
+     * Verifies an ID token and reads the user it describes.
+     *
+     * @param idToken the ID token from the token exchange
+     * @return the user information carried by the token
+     * @throws JwtValidationException if the token is not signed by the provider, not for this client, or expired
+     */
+    public OutboundUserResponse verify(String idToken) throws JwtValidationException {
+        Claims claims;
+        try {
+            claims = parser.parseSignedClaims(idToken).getPayload();
+        } catch (JwtException | IllegalArgumentException ex) {
+            throw new JwtValidationException(INVALID_ID_TOKEN_MSG, ex);
+        }
+        if (!issuers.contains(claims.getIssuer())) {
+            throw new JwtValidationException(INVALID_ID_TOKEN_MSG,
+                    new UnsupportedJwtException("Unexpected issuer " + claims.getIssuer()));
+        }
+
+        return OutboundUserResponse.builder()
+                .id(claims.getSubject())
+                .email(claims.get("email", String.class))
+                .verifiedEmail(isTrue(claims.get("email_verified")))
+                .name(claims.get("name", String.class))
+                .givenName(claims.get("given_name", String.class))
+                .familyName(claims.get("family_name", String.class))
+                .picture(claims.get("picture", String.class))
+                .locale(claims.get("locale", String.class))
+                .build();
+    }
+
+    /**
+     * Refreshes the provider's signing keys once they expire, ahead of the next sign-in.
+     */
+    @Scheduled(fixedDelayString = "${app.security.oidc.jwks-refresh-check-ms:60000}")
+    public void refreshKeys() {
+        keyCache.refreshIfExpired();
+    }
+
+    /**
+     * Reads a boolean claim, which some providers send as a string.
+     */
+    private static boolean isTrue(Object claim) {
+        return Boolean.TRUE.equals(claim) || "true".equals(claim);
+    }
+}
@@ -1,36 +1,46 @@
 package com.hcmus.demo.security.auth;
 
-import com.hcmus.demo.token.RefreshTokenRepository;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.hcmus.demo.scheduling.ScheduledJobLock;
+import com.hcmus.demo.token.RefreshTokenPurgeEngine;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
 
 /**
  * Scheduled task for removing expired refresh tokens from the database.
  * This class is annotated with @EnableScheduling to enable scheduling support.
  * It uses a fixed delay interval specified in the application properties to periodically delete expired tokens.
+ * When several nodes run the application, only the node holding the job lease runs the purge.
  */
 @Component
 @EnableScheduling
 public class RefreshTokenRemovalScheduleTask {
-    private static final Logger LOGGER = LoggerFactory.getLogger(RefreshTokenRemovalScheduleTask.class);
+    private static final String JOB_NAME = "refresh-token-purge";
+
+    @Autowired
+    private RefreshTokenPurgeEngine purgeEngine;
 
     @Autowired
-    private RefreshTokenRepository repo;
+    private ScheduledJobLock jobLock;
+
+    @Value("${app.refresh-token.purge.lock-at-least-ms:540000}")
+    private long lockAtLeastMillis;
+
+    @Value("${app.refresh-token.purge.lock-at-most-ms:60000}")
+    private long lockAtMostMillis;
 
     /**
      * Deletes expired refresh tokens from the database.
      * This method is scheduled to run at a fixed delay interval specified in the application properties.
-     * It logs the number of deleted refresh tokens.
+     * The purge engine deletes in bounded batches, stops if the lease is lost and logs the number of deleted refresh tokens.
      */
     @Scheduled(fixedDelayString  = "${app.refresh-token.removal.interval}", initialDelay = 5000)
-    @Transactional
     public void deleteExpireRefreshToken() {
-        int rows = repo.deleteByExpiryTime();
-        LOGGER.info("Number of deleted refresh tokens : " + rows);
+        jobLock.runLocked(JOB_NAME, Duration.ofMillis(lockAtMostMillis), Duration.ofMillis(lockAtLeastMillis),
+                lease -> purgeEngine.purge(() -> jobLock.isHeld(lease)));
     }
-}
\ No newline at end of file
+}
@@ -2,33 +2,55 @@ package com.hcmus.demo.security.auth;
 
 import com.hcmus.demo.exception_handler.exception.RefreshTokenExpireException;
 import com.hcmus.demo.exception_handler.exception.RefreshTokenNotFoundException;
+import com.hcmus.demo.exception_handler.exception.RefreshTokenReuseException;
 import com.hcmus.demo.model.RefreshToken;
 import com.hcmus.demo.model.User;
 import com.hcmus.demo.security.jwt.JwtUtility;
+import com.hcmus.demo.token.RefreshTokenRecord;
 import com.hcmus.demo.token.RefreshTokenRepository;
+import com.hcmus.demo.token.RefreshTokenStore;
+import com.hcmus.demo.user.UserMapper;
 import com.hcmus.demo.user.UserResponseDTO;
-import org.modelmapper.ModelMapper;
+import com.hcmus.demo.user.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
 import java.util.Date;
 import java.util.List;
-import java.util.UUID;
 
 /**
  * Service class for handling token generation and refresh operations.
  * This class uses JwtUtility to generate access tokens for authenticated users
  * and manages refresh tokens for token renewal.
+ * Refresh tokens have the form "selector.verifier": the selector finds the row through
+ * a unique index and the verifier is checked against its SHA-256 hash in constant time.
+ * Refresh tokens rotate: each refresh consumes the presented token and issues its successor
+ * in the same family, and presenting a consumed token again revokes the whole family.
+ * Selector/verifier tokens are kept in the configured RefreshTokenStore; legacy tokens stay on the repository.
  */
 @Service
 public class TokenService {
+    private static final int SELECTOR_BYTES = 12;
+    private static final int VERIFIER_BYTES = 32;
+    private static final char SELECTOR_SEPARATOR = '.';
+    private static final String VERIFIER_DIGEST_ALGORITHM = "SHA-256";
+    private static final String TOKEN_NOT_FOUND_MSG = "Refresh token not found";
+    private static final String TOKEN_EXPIRED_MSG = "Refresh token has expired";
+    private static final String TOKEN_REUSED_MSG = "Refresh token has already been used, its sessions are revoked";
+
     @Autowired
     private JwtUtility jwtUtil;
 
     @Autowired
-    private ModelMapper modelMapper;
+    private UserMapper userMapper;
 
     @Value("${app.security.jwt.refresh-token.expiration}")
     private int refreshTokenExpiration;
@@ -36,9 +58,17 @@ public class TokenService {
     @Autowired
     RefreshTokenRepository refreshTokenRepo;
 
+    @Autowired
+    RefreshTokenStore refreshTokenStore;
+
     @Autowired
     PasswordEncoder passwordEncoder;
 
+    @Autowired
+    UserService userService;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+
     /**
      * Generates an access token and a refresh token for the given user.
      * The access token is used for authentication, while the refresh token
@@ -48,24 +78,31 @@ public class TokenService {
      * @return an AuthResponse containing the generated access and refresh tokens
      */
     public AuthResponse generateToken(User user) {
+        return generateToken(user, randomToken(SELECTOR_BYTES));
+    }
+
+    /**
+     * Generates an access token and a refresh token belonging to the given token family.
+     *
+     * @param user     the user for whom the tokens are generated
+     * @param familyId the family of the refresh token
+     * @return an AuthResponse containing the generated access and refresh tokens
+     */
+    private AuthResponse generateToken(User user, String familyId) {
         String accessToken = jwtUtil.generateAccessToken(user);
 
         AuthResponse response = new AuthResponse();
         response.setAccessToken(accessToken);
 
-        String randomUUID = UUID.randomUUID().toString();
-        response.setRefreshToken(randomUUID);
-
-        RefreshToken refreshToken = new RefreshToken();
-        refreshToken.setU(user);
-        refreshToken.setToken(passwordEncoder.encode(randomUUID));
+        String selector = randomToken(SELECTOR_BYTES);
+        String verifier = randomToken(VERIFIER_BYTES);
+        response.setRefreshToken(selector + SELECTOR_SEPARATOR + verifier);
 
         long refreshTokenExpirationInMillis = System.currentTimeMillis() + refreshTokenExpiration * 60000L;
-        refreshToken.setExpiryTime(new Date(refreshTokenExpirationInMillis));
-
-        refreshTokenRepo.save(refreshToken);
+        refreshTokenStore.save(new RefreshTokenRecord(selector, Base64.getEncoder().encodeToString(hashVerifier(verifier)),
+                user.getId(), familyId, new Date(refreshTokenExpirationInMillis), null));
 
-        UserResponseDTO userDTO = modelMapper.map(user, UserResponseDTO.class);
+        UserResponseDTO userDTO = userMapper.toResponse(user);
         response.setUser(userDTO);
 
         return response;
@@ -73,42 +110,141 @@ public class TokenService {
 
     /**
      * Refreshes the access token using the provided refresh token.
-     * Validates the refresh token and generates a new access token if the refresh token is valid.
+     * Validates the refresh token, consumes it and generates a new access token and the successor
+     * refresh token if the refresh token is valid.
      *
      * @param request the refresh token request containing the username and refresh token
      * @return an AuthResponse containing the new access token
      * @throws RefreshTokenNotFoundException if the refresh token is not found
      * @throws RefreshTokenExpireException if the refresh token has expired
+     * @throws RefreshTokenReuseException if the refresh token has already been consumed
      */
-    public AuthResponse refreshTokens(RefreshTokenRequest request) throws RefreshTokenNotFoundException, RefreshTokenExpireException {
-        AuthResponse response = new AuthResponse();
-
+    @Transactional
+    public AuthResponse refreshTokens(RefreshTokenRequest request)
+            throws RefreshTokenNotFoundException, RefreshTokenExpireException, RefreshTokenReuseException {
         String username = request.getUsername();
         String rawRefreshToken = request.getRefreshToken();
+        if (rawRefreshToken == null) {
+            throw new RefreshTokenNotFoundException(TOKEN_NOT_FOUND_MSG);
+        }
+
+        int separator = rawRefreshToken.indexOf(SELECTOR_SEPARATOR);
+        if (separator < 0) {
+            return rotateLegacyToken(username, rawRefreshToken);
+        }
+        return rotateToken(username, rawRefreshToken.substring(0, separator), rawRefreshToken.substring(separator + 1));
+    }
+
+    /**
+     * Validates a selector/verifier refresh token, consumes it and issues its successor.
+     * A token that has already been consumed revokes its whole family.
+     *
+     * @param username the username the token was presented for
+     * @param selector the selector part of the token
+     * @param verifier the verifier part of the token
+     * @return an AuthResponse containing the new access token and the successor refresh token
+     * @throws RefreshTokenNotFoundException if no token matches
+     * @throws RefreshTokenExpireException if the token has expired
+     * @throws RefreshTokenReuseException if the token has already been consumed
+     */
+    private AuthResponse rotateToken(String username, String selector, String verifier)
+            throws RefreshTokenNotFoundException, RefreshTokenExpireException, RefreshTokenReuseException {
+        RefreshTokenRecord lookup = refreshTokenStore.findBySelector(selector)
+                .orElseThrow(() -> new RefreshTokenNotFoundException(TOKEN_NOT_FOUND_MSG));
+
+        if (!MessageDigest.isEqual(hashVerifier(verifier), Base64.getDecoder().decode(lookup.tokenHash()))) {
+            throw new RefreshTokenNotFoundException(TOKEN_NOT_FOUND_MSG);
+        }
+
+        if (lookup.consumedAt() != null) {
+            revokeFamily(lookup.familyId());
+        }
 
-        System.out.println("Username: " + username);
-        System.out.println("Refresh token: " + rawRefreshToken);
+        if (lookup.expiryTime().before(new Date())) {
+            throw new RefreshTokenExpireException(TOKEN_EXPIRED_MSG);
+        }
+
+        User user = userService.getUserById(lookup.userId());
+        if (user == null || !user.getUsername().equals(username)) {
+            throw new RefreshTokenNotFoundException(TOKEN_NOT_FOUND_MSG);
+        }
+
+        // A concurrent refresh with the same token consumed it first: this is a replay as well
+        if (!refreshTokenStore.consume(selector, new Date())) {
+            revokeFamily(lookup.familyId());
+        }
+        refreshTokenStore.deleteConsumed(lookup.familyId(), selector);
+
+        return generateToken(user, lookup.familyId());
+    }
 
+    /**
+     * Revokes every refresh token of a family after one of its consumed tokens was presented again.
+     *
+     * @param familyId the family of the replayed token
+     * @throws RefreshTokenReuseException always, once the family has been revoked
+     */
+    private void revokeFamily(String familyId) throws RefreshTokenReuseException {
+        refreshTokenStore.revokeFamily(familyId);
+        throw new RefreshTokenReuseException(TOKEN_REUSED_MSG);
+    }
+
+    /**
+     * Validates a legacy refresh token, stored as a BCrypt hash, deletes it and issues a token of a new family.
+     * Legacy tokens keep working until they expire or are used once.
+     *
+     * @param username        the username the token was presented for
+     * @param rawRefreshToken the refresh token
+     * @return an AuthResponse containing the new access token and refresh token
+     * @throws RefreshTokenNotFoundException if no token matches
+     * @throws RefreshTokenExpireException if the token has expired
+     */
+    private AuthResponse rotateLegacyToken(String username, String rawRefreshToken)
+            throws RefreshTokenNotFoundException, RefreshTokenExpireException {
         RefreshToken refreshTokenFound = null;
-        List<RefreshToken> refreshTokens = refreshTokenRepo.findByUsername(username);
+        List<RefreshToken> refreshTokens = refreshTokenRepo.findLegacyByUsername(username);
         for (RefreshToken refreshToken : refreshTokens) {
             if (passwordEncoder.matches(rawRefreshToken, refreshToken.getToken())) {
                 refreshTokenFound = refreshToken;
+                break;
             }
         }
 
-        System.out.println("Refresh token found: " + refreshTokenFound);
-
         if (refreshTokenFound == null) {
-            throw new RefreshTokenNotFoundException("Refresh token not found");
+            throw new RefreshTokenNotFoundException(TOKEN_NOT_FOUND_MSG);
         }
 
-        Date currentTime = new Date();
-        if (refreshTokenFound.getExpiryTime().before(currentTime)) {
-            throw new RefreshTokenExpireException("Refresh token has expired");
+        if (refreshTokenFound.getExpiryTime().before(new Date())) {
+            throw new RefreshTokenExpireException(TOKEN_EXPIRED_MSG);
         }
 
-        response = generateToken(refreshTokenFound.getU());
-        return response;
+        refreshTokenRepo.delete(refreshTokenFound);
+        return generateToken(refreshTokenFound.getU());
+    }
+
+    /**
+     * Generates a random URL-safe token part.
+     *
+     * @param bytes the number of random bytes
+     * @return the Base64url encoded random bytes
+     */
+    private String randomToken(int bytes) {
+        byte[] random = new byte[bytes];
+        secureRandom.nextBytes(random);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+    }
+
+    /**
+     * Hashes the verifier part of a refresh token.
+     *
+     * @param verifier the verifier
+     * @return the SHA-256 digest of the verifier
+     */
+    private static byte[] hashVerifier(String verifier) {
+        try {
+            return MessageDigest.getInstance(VERIFIER_DIGEST_ALGORITHM).digest(verifier.getBytes(StandardCharsets.US_ASCII));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
     }
-}
\ No newline at end of file
+}
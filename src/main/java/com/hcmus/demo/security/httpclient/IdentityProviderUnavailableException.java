@@ -0,0 +1,22 @@
+package com.hcmus.demo.security.httpclient;
+
+import com.hcmus.demo.exception_handler.exception.ServiceUnavailableException;
+
+/**
+ * Custom exception class for an unavailable identity provider.
+ * This exception is thrown when a call to the identity provider times out, fails on the provider side,
+ * or is refused by the open circuit breaker.
+ */
+public class IdentityProviderUnavailableException extends ServiceUnavailableException {
+
+    /**
+     * Constructs a new IdentityProviderUnavailableException with the specified detail message and cause.
+     *
+     * @param message           the detail message
+     * @param retryAfterSeconds the suggested delay before retrying
+     * @param cause             the failure of the call
+     */
+    public IdentityProviderUnavailableException(String message, long retryAfterSeconds, Throwable cause) {
+        super(message, retryAfterSeconds, cause);
+    }
+}
@@ -0,0 +1,57 @@
+package com.hcmus.demo.security.httpclient;
+
+import feign.FeignException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JCircuitBreakerFactory;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JConfigBuilder;
+import org.springframework.cloud.client.circuitbreaker.Customizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration class for the circuit breakers of the identity provider clients.
+ * The clients run on the pooled OkHttp transport with per-client timeouts (spring.cloud.openfeign.*).
+ * Each client method has its own circuit breaker: it opens when the failure rate or the share of slow calls
+ * over the last calls passes the threshold, and refuses calls until the open wait is over.
+ * Rejections of the request itself (4xx) are not failures of the provider and are not counted.
+ */
+@Configuration
+public class OutboundClientConfig {
+
+    /**
+     * Configures the default circuit breaker and time limiter of the Feign clients.
+     *
+     * @return the customizer of the circuit breaker factory
+     */
+    @Bean
+    public Customizer<Resilience4JCircuitBreakerFactory> outboundCircuitBreakerCustomizer(
+            @Value("${app.outbound.circuit-breaker.window-size:20}") int windowSize,
+            @Value("${app.outbound.circuit-breaker.minimum-calls:10}") int minimumCalls,
+            @Value("${app.outbound.circuit-breaker.failure-rate-threshold:50}") float failureRateThreshold,
+            @Value("${app.outbound.circuit-breaker.slow-call-ms:2000}") long slowCallMillis,
+            @Value("${app.outbound.circuit-breaker.wait-open-ms:30000}") long waitOpenMillis,
+            @Value("${app.outbound.circuit-breaker.time-limit-ms:6000}") long timeLimitMillis) {
+        CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.custom()
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .slidingWindowSize(windowSize)
+                .minimumNumberOfCalls(minimumCalls)
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallRateThreshold(failureRateThreshold)
+                .slowCallDurationThreshold(Duration.ofMillis(slowCallMillis))
+                .waitDurationInOpenState(Duration.ofMillis(waitOpenMillis))
+                .ignoreExceptions(FeignException.FeignClientException.class)
+                .build();
+        // Backstop above the connect and read timeouts, which normally end a slow call first
+        TimeLimiterConfig timeLimiterConfig = TimeLimiterConfig.custom()
+                .timeoutDuration(Duration.ofMillis(timeLimitMillis))
+                .build();
+        return factory -> factory.configureDefault(id -> new Resilience4JConfigBuilder(id)
+                .circuitBreakerConfig(circuitBreakerConfig)
+                .timeLimiterConfig(timeLimiterConfig)
+                .build());
+    }
+}
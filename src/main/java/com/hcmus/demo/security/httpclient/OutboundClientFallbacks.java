@@ -0,0 +1,58 @@
+package com.hcmus.demo.security.httpclient;
+
+import feign.FeignException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.openfeign.FallbackFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fallbacks of the identity provider clients, called when a call fails or the circuit breaker is open.
+ * Rejections of the request itself (4xx), such as an invalid authorization code, are rethrown as they are;
+ * any other failure fails fast with IdentityProviderUnavailableException.
+ */
+public final class OutboundClientFallbacks {
+    private static final String UNAVAILABLE_MSG = "The identity provider is unavailable, please retry later";
+
+    private OutboundClientFallbacks() {
+    }
+
+    /**
+     * Fallback of OutboundIdentityClient.
+     */
+    @Component
+    public static class Identity implements FallbackFactory<OutboundIdentityClient> {
+        @Value("${app.outbound.circuit-breaker.wait-open-ms:30000}")
+        private long waitOpenMillis;
+
+        @Override
+        public OutboundIdentityClient create(Throwable cause) {
+            return request -> {
+                throw unavailable(cause, waitOpenMillis);
+            };
+        }
+    }
+
+    /**
+     * Fallback of OutboundUserClient.
+     */
+    @Component
+    public static class UserInfo implements FallbackFactory<OutboundUserClient> {
+        @Value("${app.outbound.circuit-breaker.wait-open-ms:30000}")
+        private long waitOpenMillis;
+
+        @Override
+        public OutboundUserClient create(Throwable cause) {
+            return (alt, accessToken) -> {
+                throw unavailable(cause, waitOpenMillis);
+            };
+        }
+    }
+
+    private static RuntimeException unavailable(Throwable cause, long waitOpenMillis) {
+        if (cause instanceof FeignException.FeignClientException clientException) {
+            return clientException;
+        }
+        return new IdentityProviderUnavailableException(UNAVAILABLE_MSG,
+                Math.max(1, waitOpenMillis / 1000), cause);
+    }
+}
@@ -11,7 +11,8 @@ import org.springframework.cloud.openfeign.FeignClient;
  * Feign client interface for interacting with the external identity provider.
  * This interface defines methods for making HTTP requests to the identity provider's API.
  */
-@FeignClient(name = "outbound-identity", url = "https://oauth2.googleapis.com")
+@FeignClient(name = "outbound-identity", url = "${app.outbound.identity.url:https://oauth2.googleapis.com}",
+        fallbackFactory = OutboundClientFallbacks.Identity.class)
 public interface OutboundIdentityClient {
 
     /**
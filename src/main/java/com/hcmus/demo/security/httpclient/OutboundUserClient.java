@@ -9,7 +9,8 @@ import org.springframework.web.bind.annotation.RequestParam;
  * Feign client interface for interacting with the external user information provider.
  * This interface defines methods for making HTTP requests to the user information provider's API.
  */
-@FeignClient(name = "outbound-user-client", url = "https://www.googleapis.com")
+@FeignClient(name = "outbound-user-client", url = "${app.outbound.user.url:https://www.googleapis.com}",
+        fallbackFactory = OutboundClientFallbacks.UserInfo.class)
 public interface OutboundUserClient {
 
     /**
@@ -0,0 +1,62 @@
+package com.hcmus.demo.security.jwt;
+
+import org.springframework.http.HttpHeaders;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * JWKS source fetching the document over HTTP, cacheable for the max-age of its Cache-Control header.
+ */
+public class HttpJwksSource implements JwksSource {
+    private static final Pattern MAX_AGE = Pattern.compile("(?:^|[,\\s])max-age\\s*=\\s*\"?(\\d{1,10})");
+
+    private final URI uri;
+    private final Duration timeout;
+    private final HttpClient httpClient;
+
+    public HttpJwksSource(URI uri, Duration timeout) {
+        this.uri = uri;
+        this.timeout = timeout;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    @Override
+    public JwksDocument fetch() throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(timeout).GET().build();
+        HttpResponse<String> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching " + uri, ex);
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("Could not fetch " + uri + ": HTTP " + response.statusCode());
+        }
+        Duration maxAge = response.headers().firstValue(HttpHeaders.CACHE_CONTROL)
+                .map(HttpJwksSource::parseMaxAge)
+                .orElse(null);
+        return new JwksDocument(response.body(), maxAge);
+    }
+
+    /**
+     * Reads the max-age directive of a Cache-Control header.
+     *
+     * @param cacheControl the header value
+     * @return the max age, or null if the header has none
+     */
+    static Duration parseMaxAge(String cacheControl) {
+        Matcher matcher = MAX_AGE.matcher(cacheControl);
+        return matcher.find() ? Duration.ofSeconds(Long.parseLong(matcher.group(1))) : null;
+    }
+}
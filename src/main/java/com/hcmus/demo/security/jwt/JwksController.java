@@ -0,0 +1,32 @@
+package com.hcmus.demo.security.jwt;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * REST controller publishing the public keys of the access token key ring.
+ * Other services fetch this document to verify access tokens locally.
+ */
+@RestController
+@RequiredArgsConstructor
+public class JwksController {
+    private final JwtKeyRing keyRing;
+
+    /**
+     * Returns the JWKS document of the key ring.
+     * The response may be cached by clients and proxies for the configured max age.
+     *
+     * @return the response entity with the JWKS document
+     */
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> jwks() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(keyRing.getJwksMaxAge()).cachePublic())
+                .body(keyRing.getJwks());
+    }
+}
@@ -0,0 +1,28 @@
+package com.hcmus.demo.security.jwt;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Source of the JWKS document of a token issuer.
+ */
+@FunctionalInterface
+public interface JwksSource {
+
+    /**
+     * Fetches the current JWKS document.
+     *
+     * @return the document and how long it may be cached
+     * @throws IOException if the document cannot be fetched
+     */
+    JwksDocument fetch() throws IOException;
+
+    /**
+     * A fetched JWKS document.
+     *
+     * @param json   the JSON document
+     * @param maxAge how long the document may be cached, or null if the source does not say
+     */
+    record JwksDocument(String json, Duration maxAge) {
+    }
+}
@@ -0,0 +1,200 @@
+package com.hcmus.demo.security.jwt;
+
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Ring of asymmetric keys used to sign and verify access tokens.
+ * Verification keys are indexed by key id, so tokens signed by any key of the ring,
+ * including keys retired during a rotation, are verified with a single map lookup.
+ * The public keys are also exposed as a JWKS document for other services.
+ */
+@Component
+@Getter
+public class JwtKeyRing {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JwtKeyRing.class);
+
+    private static final int EC_P256_COORDINATE_LENGTH = 32;
+    private static final int ED25519_KEY_LENGTH = 32;
+
+    private final JwtSigningAlgorithm algorithm; // The algorithm used to sign new tokens
+    private final boolean acceptHmac; // Whether HS512 tokens without a key id are accepted
+    private final Duration jwksMaxAge; // How long clients may cache the JWKS document
+    private final String signingKeyId; // The key id of the active signing key, null for HS512
+    private final PrivateKey signingKey; // The active signing key, null for HS512
+    private final Map<String, Object> jwks; // The JWKS document of the ring
+
+    private final Map<String, PublicKey> verificationKeys;
+
+    /**
+     * Builds the key ring from the configuration properties.
+     * When an asymmetric algorithm is selected without keys, an ephemeral key pair is generated.
+     *
+     * @param properties the key ring configuration
+     * @throws IllegalStateException if a key cannot be decoded or the active key has no private key
+     */
+    public JwtKeyRing(JwtKeyRingProperties properties) {
+        this.algorithm = properties.getAlgorithm();
+        this.acceptHmac = properties.isAcceptHmac() || !algorithm.isAsymmetric();
+        this.jwksMaxAge = properties.getJwksMaxAge();
+
+        Map<String, PublicKey> publicKeys = new LinkedHashMap<>();
+        Map<String, PrivateKey> privateKeys = new HashMap<>();
+        if (algorithm.isAsymmetric()) {
+            for (JwtKeyRingProperties.KeyEntry entry : properties.getKeys()) {
+                publicKeys.put(entry.getId(), decodePublicKey(entry.getPublicKey()));
+                if (entry.getPrivateKey() != null && !entry.getPrivateKey().isBlank()) {
+                    privateKeys.put(entry.getId(), decodePrivateKey(entry.getPrivateKey()));
+                }
+            }
+            if (publicKeys.isEmpty()) {
+                String keyId = UUID.randomUUID().toString();
+                KeyPair keyPair = algorithm.generateKeyPair();
+                publicKeys.put(keyId, keyPair.getPublic());
+                privateKeys.put(keyId, keyPair.getPrivate());
+                LOGGER.warn("No {} keys configured, generated ephemeral key {}. Tokens will not survive a restart "
+                        + "and are not shared with other nodes.", algorithm.getJwsName(), keyId);
+            }
+        }
+
+        String activeKeyId = properties.getActiveKeyId();
+        if (activeKeyId == null && algorithm.isAsymmetric()) {
+            activeKeyId = publicKeys.keySet().stream()
+                    .filter(privateKeys::containsKey)
+                    .findFirst()
+                    .orElse(null);
+        }
+        if (algorithm.isAsymmetric() && !privateKeys.containsKey(activeKeyId)) {
+            throw new IllegalStateException("Active JWT key " + activeKeyId + " has no private key");
+        }
+
+        this.signingKeyId = algorithm.isAsymmetric() ? activeKeyId : null;
+        this.signingKey = algorithm.isAsymmetric() ? privateKeys.get(activeKeyId) : null;
+        this.verificationKeys = Map.copyOf(publicKeys);
+
+        List<Map<String, String>> keys = new ArrayList<>();
+        publicKeys.forEach((keyId, key) -> keys.add(toJwk(keyId, key)));
+        this.jwks = Map.of("keys", List.copyOf(keys));
+    }
+
+    /**
+     * Checks if new tokens are signed with a key of the ring.
+     *
+     * @return true if the signing algorithm is asymmetric
+     */
+    public boolean isAsymmetric() {
+        return algorithm.isAsymmetric();
+    }
+
+    /**
+     * Finds the public key with the given key id.
+     *
+     * @param keyId the key id from the token header
+     * @return the public key, or null if the ring has no key with this id
+     */
+    public PublicKey verificationKey(String keyId) {
+        return verificationKeys.get(keyId);
+    }
+
+    /**
+     * Decodes a Base64 or PEM encoded X.509 public key.
+     *
+     * @param value the encoded key
+     * @return the public key
+     */
+    private PublicKey decodePublicKey(String value) {
+        try {
+            return KeyFactory.getInstance(algorithm.getKeyAlgorithm())
+                    .generatePublic(new X509EncodedKeySpec(decode(value)));
+        } catch (GeneralSecurityException | IllegalArgumentException ex) {
+            throw new IllegalStateException("Cannot decode " + algorithm.getJwsName() + " public key", ex);
+        }
+    }
+
+    /**
+     * Decodes a Base64 or PEM encoded PKCS#8 private key.
+     *
+     * @param value the encoded key
+     * @return the private key
+     */
+    private PrivateKey decodePrivateKey(String value) {
+        try {
+            return KeyFactory.getInstance(algorithm.getKeyAlgorithm())
+                    .generatePrivate(new PKCS8EncodedKeySpec(decode(value)));
+        } catch (GeneralSecurityException | IllegalArgumentException ex) {
+            throw new IllegalStateException("Cannot decode " + algorithm.getJwsName() + " private key", ex);
+        }
+    }
+
+    /**
+     * Strips an optional PEM armor and decodes the Base64 body.
+     *
+     * @param value the encoded key
+     * @return the DER bytes of the key
+     */
+    private static byte[] decode(String value) {
+        String body = value.replaceAll("-----(BEGIN|END) [A-Z ]+-----", "").replaceAll("\\s", "");
+        return Base64.getDecoder().decode(body);
+    }
+
+    /**
+     * Converts a public key to its JWK representation.
+     *
+     * @param keyId the key id
+     * @param key   the public key
+     * @return the JWK members of the key
+     */
+    private Map<String, String> toJwk(String keyId, PublicKey key) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        Map<String, String> jwk = new LinkedHashMap<>();
+        if (key instanceof ECPublicKey ecKey) {
+            jwk.put("kty", "EC");
+            jwk.put("crv", "P-256");
+            jwk.put("x", encoder.encodeToString(unsigned(ecKey.getW().getAffineX(), EC_P256_COORDINATE_LENGTH)));
+            jwk.put("y", encoder.encodeToString(unsigned(ecKey.getW().getAffineY(), EC_P256_COORDINATE_LENGTH)));
+        } else {
+            // The X.509 encoding of an Ed25519 key ends with the 32 raw key bytes
+            byte[] encoded = key.getEncoded();
+            jwk.put("kty", "OKP");
+            jwk.put("crv", "Ed25519");
+            jwk.put("x", encoder.encodeToString(
+                    Arrays.copyOfRange(encoded, encoded.length - ED25519_KEY_LENGTH, encoded.length)));
+        }
+        jwk.put("use", "sig");
+        jwk.put("alg", algorithm.getJwsName());
+        jwk.put("kid", keyId);
+        return jwk;
+    }
+
+    /**
+     * Encodes an elliptic curve coordinate as a fixed-length unsigned big-endian array.
+     *
+     * @param value  the coordinate
+     * @param length the length of the coordinate in bytes
+     * @return the encoded coordinate
+     */
+    private static byte[] unsigned(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length == length) {
+            return bytes;
+        }
+        byte[] result = new byte[length];
+        int copy = Math.min(bytes.length, length);
+        System.arraycopy(bytes, bytes.length - copy, result, length - copy, copy);
+        return result;
+    }
+}
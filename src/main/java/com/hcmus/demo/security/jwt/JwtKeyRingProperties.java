@@ -0,0 +1,36 @@
+package com.hcmus.demo.security.jwt;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configuration properties of the access token key ring, bound from "app.security.jwt.key-ring".
+ */
+@Component
+@ConfigurationProperties(prefix = "app.security.jwt.key-ring")
+@Getter
+@Setter
+public class JwtKeyRingProperties {
+    private JwtSigningAlgorithm algorithm = JwtSigningAlgorithm.HS512; // The algorithm used to sign new tokens
+    private String activeKeyId; // The key id used to sign new tokens, defaults to the first key with a private key
+    private boolean acceptHmac = true; // Whether HS512 tokens without a key id are still accepted
+    private Duration jwksMaxAge = Duration.ofHours(1); // How long clients may cache the JWKS document
+    private List<KeyEntry> keys = new ArrayList<>(); // The keys of the ring, current and retired
+
+    /**
+     * A key of the ring. Retired keys only need the public key so that tokens they signed keep validating.
+     */
+    @Getter
+    @Setter
+    public static class KeyEntry {
+        private String id; // The key id, written to the "kid" header
+        private String privateKey; // Base64 or PEM encoded PKCS#8 private key
+        private String publicKey; // Base64 or PEM encoded X.509 public key
+    }
+}
@@ -0,0 +1,37 @@
+package com.hcmus.demo.security.jwt;
+
+import com.hcmus.demo.model.Role;
+
+import java.io.Serializable;
+import java.security.Principal;
+
+/**
+ * Immutable principal built from the claims of a verified access token.
+ * It is created once per token and shared by every request that presents the same token.
+ *
+ * @param id       the identifier of the authenticated user
+ * @param username the username of the authenticated user
+ * @param role     the role of the authenticated user
+ */
+public record JwtPrincipal(long id, String username, Role role) implements Principal, Serializable {
+
+    /**
+     * Creates the principal of a user with the USER role.
+     *
+     * @param id       the identifier of the authenticated user
+     * @param username the username of the authenticated user
+     */
+    public JwtPrincipal(long id, String username) {
+        this(id, username, Role.USER);
+    }
+
+    /**
+     * Returns the username, so that {@code Authentication#getName()} resolves to it.
+     *
+     * @return the username of the authenticated user
+     */
+    @Override
+    public String getName() {
+        return username;
+    }
+}
@@ -0,0 +1,61 @@
+package com.hcmus.demo.security.jwt;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.SignatureAlgorithm;
+import lombok.Getter;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+
+/**
+ * Algorithms available for signing access tokens.
+ * HS512 uses the shared secret; the asymmetric algorithms use the key ring and are published as JWKS.
+ */
+@Getter
+public enum JwtSigningAlgorithm {
+    HS512("HS512", null, null),
+    ES256("ES256", "EC", Jwts.SIG.ES256),
+    EdDSA("EdDSA", "Ed25519", Jwts.SIG.EdDSA);
+
+    private final String jwsName; // The "alg" header value
+    private final String keyAlgorithm; // The JCA key algorithm of the key pair, null for HMAC
+    private final SignatureAlgorithm signatureAlgorithm; // The JJWT signature algorithm, null for HMAC
+
+    JwtSigningAlgorithm(String jwsName, String keyAlgorithm, SignatureAlgorithm signatureAlgorithm) {
+        this.jwsName = jwsName;
+        this.keyAlgorithm = keyAlgorithm;
+        this.signatureAlgorithm = signatureAlgorithm;
+    }
+
+    /**
+     * Checks if the algorithm signs with a private key and verifies with a public key.
+     *
+     * @return true for ES256 and EdDSA
+     */
+    public boolean isAsymmetric() {
+        return signatureAlgorithm != null;
+    }
+
+    /**
+     * Generates a new key pair for this algorithm.
+     *
+     * @return a P-256 key pair for ES256 or an Ed25519 key pair for EdDSA
+     * @throws IllegalStateException if the algorithm is symmetric or the JVM cannot generate the key pair
+     */
+    public KeyPair generateKeyPair() {
+        if (!isAsymmetric()) {
+            throw new IllegalStateException(jwsName + " does not use key pairs");
+        }
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance(keyAlgorithm);
+            if (this == ES256) {
+                generator.initialize(new ECGenParameterSpec("secp256r1"));
+            }
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Cannot generate " + jwsName + " key pair", ex);
+        }
+    }
+}
@@ -1,23 +1,29 @@
 package com.hcmus.demo.security.jwt;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
-import com.hcmus.demo.model.User;
-import com.hcmus.demo.security.CustomUserDetail;
+import com.hcmus.demo.model.Role;
+import com.hcmus.demo.security.WebSecurityConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.stereotype.Component;
-import org.springframework.util.ObjectUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.web.servlet.HandlerExceptionResolver;
 
-import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -26,12 +32,22 @@ import jakarta.servlet.http.HttpServletResponse;
 /**
  * Filter class for JWT token validation.
  * This filter intercepts HTTP requests to validate the JWT token and set the authentication context.
+ * Public routes are skipped entirely.
  */
 @Component
 public class JwtTokenFilter extends OncePerRequestFilter {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JwtTokenFilter.class);
 
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private static final RequestMatcher PUBLIC_ROUTES = new OrRequestMatcher(
+            Arrays.stream(WebSecurityConfig.PUBLIC_PATHS)
+                    .map(AntPathRequestMatcher::new)
+                    .toArray(RequestMatcher[]::new));
+
+    private static final Map<Role, List<GrantedAuthority>> AUTHORITIES = authoritiesByRole();
+
     @Autowired
     JwtUtility jwtUtil;
 
@@ -39,6 +55,17 @@ public class JwtTokenFilter extends OncePerRequestFilter {
     @Qualifier("handlerExceptionResolver")
     HandlerExceptionResolver exceptionResolver;
 
+    /**
+     * Skips the filter on routes that never require authentication.
+     *
+     * @param request the HTTP request
+     * @return true if the request targets a public route
+     */
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return PUBLIC_ROUTES.matches(request);
+    }
+
     /**
      * Filters incoming requests to validate JWT tokens.
      * If the token is valid, sets the authentication context.
@@ -52,22 +79,17 @@ public class JwtTokenFilter extends OncePerRequestFilter {
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
-        if (!hasAuthorizationBearer(request)) {
+        String token = extractBearerToken(request.getHeader(HttpHeaders.AUTHORIZATION));
+        if (token == null) {
             filterChain.doFilter(request, response);
             return;
         }
 
-        String token = getBearerToken(request);
-
-        LOGGER.info("Token: " + token);
-
         try {
-            Claims claims = jwtUtil.validateAccessToken(token);
-            UserDetails userDetails = getUserDetails(claims);
+            JwtPrincipal principal = jwtUtil.authenticateAccessToken(token);
 
-            setAuthenticationContext(userDetails, request);
+            setAuthenticationContext(principal);
 
-            LOGGER.info("Next filter");
             filterChain.doFilter(request, response);
 
             clearAuthenticationContext();
@@ -87,69 +109,44 @@ public class JwtTokenFilter extends OncePerRequestFilter {
     }
 
     /**
-     * Sets the authentication context with the given user details.
+     * Sets the authentication context with the given principal, granted the authority of its role.
      *
-     * @param userDetails the user details
-     * @param request     the HTTP request
+     * @param principal the principal of the verified access token
      */
-    private void setAuthenticationContext(UserDetails userDetails, HttpServletRequest request) {
-        var authentication = new UsernamePasswordAuthenticationToken(
-                userDetails, null, userDetails.getAuthorities());
-
-        authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+    private void setAuthenticationContext(JwtPrincipal principal) {
+        var authentication = UsernamePasswordAuthenticationToken.authenticated(
+                principal, null, AUTHORITIES.get(principal.role()));
 
         SecurityContextHolder.getContext().setAuthentication(authentication);
     }
 
     /**
-     * Extracts user details from the JWT claims.
+     * Builds the authorities of each role once, so that authenticating a request allocates none.
      *
-     * @param claims the JWT claims
-     * @return the user details
+     * @return the authorities granted to each role
      */
-    private UserDetails getUserDetails(Claims claims) {
-        String subject = (String) claims.get(Claims.SUBJECT);
-        String[] array = subject.split(",");
-
-        Long userId = Long.valueOf(array[0]);
-        String username = array[1];
-
-        User user = new User();
-        user.setId(userId);
-        user.setUsername(username);
-
-        return new CustomUserDetail(user);
-    }
-
-    /**
-     * Checks if the request has an Authorization header with a Bearer token.
-     *
-     * @param request the HTTP request
-     * @return true if the request has a Bearer token, false otherwise
-     */
-    private boolean hasAuthorizationBearer(HttpServletRequest request) {
-        String header = request.getHeader("Authorization");
-
-        LOGGER.info("Authorization Header: " + header);
-
-        if (ObjectUtils.isEmpty(header) || !header.startsWith("Bearer")) {
-            return false;
+    private static Map<Role, List<GrantedAuthority>> authoritiesByRole() {
+        Map<Role, List<GrantedAuthority>> authorities = new EnumMap<>(Role.class);
+        for (Role role : Role.values()) {
+            authorities.put(role, AuthorityUtils.createAuthorityList(role.authority()));
         }
-        return true;
+        return authorities;
     }
 
     /**
-     * Extracts the Bearer token from the Authorization header.
+     * Extracts the Bearer token from the Authorization header in a single scan.
      *
-     * @param request the HTTP request
-     * @return the Bearer token, or null if not present
+     * @param header the value of the Authorization header, may be null
+     * @return the Bearer token, or null if the header does not carry exactly one Bearer token
      */
-    private String getBearerToken(HttpServletRequest request) {
-        String header = request.getHeader("Authorization");
-
-        String[] array = header.split(" ");
-        if (array.length == 2) return array[1];
-        return null;
+    static String extractBearerToken(String header) {
+        int start = BEARER_PREFIX.length();
+        if (header == null || header.length() <= start
+                || !header.regionMatches(true, 0, BEARER_PREFIX, 0, start)
+                || header.indexOf(' ', start) >= 0) {
+            return null;
+        }
+        return header.substring(start);
     }
 
-}
\ No newline at end of file
+}
@@ -1,20 +1,42 @@
 package com.hcmus.demo.security.jwt;
 
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.Base64;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
+import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.hcmus.demo.model.Role;
 import com.hcmus.demo.model.User;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /**
  * Utility class for handling JWT operations.
  * This class provides methods for generating and validating JWT tokens.
+ * Tokens are signed with the shared HS512 secret or, when an asymmetric algorithm is configured,
+ * with the active key of the {@link JwtKeyRing}; verification picks the key by the "kid" header.
+ * Claims of tokens that passed signature verification are cached until the token expires,
+ * together with the principal built from them, so repeated requests with the same token
+ * skip the HMAC check and the claim parsing.
  */
 @Component
 @Getter
@@ -22,6 +44,10 @@ import org.springframework.stereotype.Component;
 public class JwtUtility {
 
     private static final String SECRET_KEY_ALGORITHM = "HmacSHA512";
+    private static final String TOKEN_DIGEST_ALGORITHM = "SHA-256";
+    private static final String VERIFIED_CACHE_NAME = "jwt.verified-claims";
+    private static final String USER_ID_CLAIM = "uid";
+    private static final String ROLE_CLAIM = "role";
 
     @Value("${app.security.jwt.issuer}")
     private String issuerName; // The issuer name for the JWT
@@ -32,6 +58,49 @@ public class JwtUtility {
     @Value("${app.security.jwt.access-token.expiration}")
     private int accessTokenExpiration; // The expiration time for the access token in minutes
 
+    @Value("${app.security.jwt.verified-cache.max-size:10000}")
+    private long verifiedCacheMaxSize; // The maximum number of verified tokens kept in memory
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JwtKeyRing keyRing;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private SecretKey signingKey; // Key used to sign HS512 access tokens, built once
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private SecretKey verificationKey; // Key used to verify HS512 access tokens, built once
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private JwtParser parser; // Thread-safe parser reused for every verification
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Cache<String, VerifiedToken> verifiedClaims; // Verified tokens keyed by the token digest
+
+    /**
+     * Builds the signing key, the parser and the verified-claims cache once the properties are injected.
+     */
+    @PostConstruct
+    void init() {
+        signingKey = Keys.hmacShaKeyFor(secretKey.getBytes());
+        verificationKey = new SecretKeySpec(secretKey.getBytes(), SECRET_KEY_ALGORITHM);
+        parser = Jwts.parser()
+                .keyLocator(new KeyRingLocator())
+                .build();
+        verifiedClaims = Caffeine.newBuilder()
+                .maximumSize(verifiedCacheMaxSize)
+                .expireAfter(new TokenExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedClaims, VERIFIED_CACHE_NAME);
+    }
+
     /**
      * Generates an access token for the given user.
      *
@@ -45,32 +114,119 @@ public class JwtUtility {
         }
 
         long expirationTimeInMillis = System.currentTimeMillis() + 30000;
-        String subject = String.format("%s,%s", user.getId(), user.getUsername());
 
-        return Jwts.builder()
-                .subject(subject)
+        JwtBuilder builder = Jwts.builder()
+                .subject(user.getUsername())
+                .claim(USER_ID_CLAIM, user.getId())
+                .claim(ROLE_CLAIM, user.getRole().name())
                 .issuer(issuerName)
                 .issuedAt(new Date())
-                .expiration(new Date(expirationTimeInMillis))
-                .signWith(Keys.hmacShaKeyFor(secretKey.getBytes()), Jwts.SIG.HS512)
-                .compact();
+                .expiration(new Date(expirationTimeInMillis));
+
+        if (keyRing.isAsymmetric()) {
+            builder.header().keyId(keyRing.getSigningKeyId()).and()
+                    .signWith(keyRing.getSigningKey(), keyRing.getAlgorithm().getSignatureAlgorithm());
+        } else {
+            builder.signWith(signingKey, Jwts.SIG.HS512);
+        }
+        return builder.compact();
     }
 
     /**
      * Validates the given access token.
+     * A token that has already been verified is answered from the cache without checking its signature again.
      *
      * @param token the access token to validate
      * @return the claims extracted from the token
      * @throws JwtValidationException if the token is invalid or expired
      */
     public Claims validateAccessToken(String token) throws JwtValidationException {
+        return verifiedToken(token).claims();
+    }
+
+    /**
+     * Validates the given access token and returns the principal it identifies.
+     *
+     * @param token the access token to validate
+     * @return the principal holding the user id and username of the token
+     * @throws JwtValidationException if the token is invalid or expired
+     */
+    public JwtPrincipal authenticateAccessToken(String token) throws JwtValidationException {
+        return verifiedToken(token).principal();
+    }
+
+    /**
+     * Looks the token up in the verified cache, verifying and caching it on a miss.
+     *
+     * @param token the access token to validate
+     * @return the verified token
+     * @throws JwtValidationException if the token is invalid or expired
+     */
+    private VerifiedToken verifiedToken(String token) throws JwtValidationException {
+        if (token == null || token.isEmpty()) {
+            throw new JwtValidationException("Access token is illegal", null);
+        }
+
+        String key = digest(token);
+        VerifiedToken cached = verifiedClaims.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        Claims claims = verify(token);
+        VerifiedToken verified = new VerifiedToken(claims, toPrincipal(claims));
+        verifiedClaims.put(key, verified);
+        return verified;
+    }
+
+    /**
+     * Builds the principal from the claims of a verified token.
+     * Tokens issued before the user id claim was introduced carry "id,username" in the subject;
+     * tokens without a known role claim are given the USER role.
+     *
+     * @param claims the verified claims
+     * @return the principal of the token
+     * @throws JwtValidationException if the claims do not identify a user
+     */
+    private static JwtPrincipal toPrincipal(Claims claims) throws JwtValidationException {
+        String subject = claims.getSubject();
+        if (subject == null) {
+            throw new JwtValidationException("Access token has no subject", null);
+        }
+
+        Object userId = claims.get(USER_ID_CLAIM);
+        if (userId instanceof Number number) {
+            return new JwtPrincipal(number.longValue(), subject, toRole(claims.get(ROLE_CLAIM)));
+        }
+
+        int separator = subject.indexOf(',');
+        try {
+            return new JwtPrincipal(Long.parseLong(subject, 0, separator, 10), subject.substring(separator + 1));
+        } catch (IndexOutOfBoundsException | NumberFormatException ex) {
+            throw new JwtValidationException("Access token subject is not well formed", ex);
+        }
+    }
+
+    /**
+     * Reads the role claim of a verified token.
+     *
+     * @param claim the value of the role claim, may be null
+     * @return ADMIN if the claim names it, USER otherwise
+     */
+    private static Role toRole(Object claim) {
+        return Role.ADMIN.name().equals(claim) ? Role.ADMIN : Role.USER;
+    }
+
+    /**
+     * Verifies the signature of the given access token and parses its claims.
+     *
+     * @param token the access token to verify
+     * @return the claims extracted from the token
+     * @throws JwtValidationException if the token is invalid or expired
+     */
+    private Claims verify(String token) throws JwtValidationException {
         try {
-            SecretKeySpec keySpec = new SecretKeySpec(secretKey.getBytes(), SECRET_KEY_ALGORITHM);
-            return Jwts.parser()
-                    .verifyWith(keySpec)
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload();
+            return parser.parseSignedClaims(token).getPayload();
         } catch (ExpiredJwtException ex) {
             throw new JwtValidationException("Access token expired", ex);
         } catch (IllegalArgumentException ex) {
@@ -81,4 +237,75 @@ public class JwtUtility {
             throw new JwtValidationException("Access token is not supported", ex);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Computes the cache key of a token, so the cache never holds the compact tokens themselves.
+     *
+     * @param token the compact access token
+     * @return the Base64 encoded SHA-256 digest of the token
+     */
+    private static String digest(String token) {
+        try {
+            MessageDigest md = MessageDigest.getInstance(TOKEN_DIGEST_ALGORITHM);
+            return Base64.getEncoder().encodeToString(md.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Selects the verification key of a token: the ring key named by the "kid" header,
+     * or the HS512 secret for tokens without a key id.
+     */
+    private final class KeyRingLocator extends LocatorAdapter<Key> {
+
+        @Override
+        protected Key locate(JwsHeader header) {
+            String keyId = header.getKeyId();
+            if (keyId == null) {
+                if (!keyRing.isAcceptHmac()) {
+                    throw new UnsupportedJwtException("Access token has no key id");
+                }
+                return verificationKey;
+            }
+
+            PublicKey key = keyRing.verificationKey(keyId);
+            if (key == null) {
+                throw new UnsupportedJwtException("Access token key id " + keyId + " is unknown");
+            }
+            return key;
+        }
+    }
+
+    /**
+     * Claims of a verified token and the principal built from them.
+     */
+    private record VerifiedToken(Claims claims, JwtPrincipal principal) {
+    }
+
+    /**
+     * Expires each cached entry at the expiration time of its token.
+     */
+    private static final class TokenExpiry implements Expiry<String, VerifiedToken> {
+
+        @Override
+        public long expireAfterCreate(String key, VerifiedToken token, long currentTime) {
+            Date expiration = token.claims().getExpiration();
+            if (expiration == null) {
+                return 0;
+            }
+            long remainingMillis = expiration.getTime() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, VerifiedToken token, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, token, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, VerifiedToken token, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
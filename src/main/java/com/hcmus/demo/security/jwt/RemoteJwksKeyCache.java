@@ -0,0 +1,183 @@
+package com.hcmus.demo.security.jwt;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cache of the signing keys published by a token issuer, indexed by key id.
+ * The key set is fetched on first use and kept for the max-age announced by the source, or a default.
+ * An expired key set, or a token signed with an unknown key id after a rotation, triggers a refresh;
+ * concurrent refreshes are collapsed into a single fetch that every caller waits for.
+ * Unknown key ids refresh at most once per minimum interval, so forged key ids cannot flood the source.
+ * If a refresh fails, the previous keys are kept and the refresh is retried after the minimum interval.
+ */
+public class RemoteJwksKeyCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RemoteJwksKeyCache.class);
+
+    private final JwksSource source;
+    private final Duration defaultMaxAge;
+    private final Duration minRefreshInterval;
+    private final Clock clock;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicReference<CompletableFuture<KeySet>> refreshing = new AtomicReference<>(); // Running refresh
+
+    private volatile KeySet keySet = new KeySet(Map.of(), Instant.MIN, Instant.MIN); // Empty until the first fetch
+
+    public RemoteJwksKeyCache(JwksSource source, Duration defaultMaxAge, Duration minRefreshInterval, Clock clock) {
+        this.source = source;
+        this.defaultMaxAge = defaultMaxAge;
+        this.minRefreshInterval = minRefreshInterval;
+        this.clock = clock;
+    }
+
+    /**
+     * Finds the key with the given key id, refreshing the key set if it is expired or does not know the key id.
+     *
+     * @param keyId the key id from the token header
+     * @return the public key, or null if the issuer has no key with this id
+     */
+    public PublicKey getKey(String keyId) {
+        Instant now = clock.instant();
+        KeySet current = keySet;
+        if (!now.isBefore(current.expiresAt())) {
+            current = refresh(current);
+        }
+        PublicKey key = current.keys().get(keyId);
+        if (key == null && !now.isBefore(current.fetchedAt().plus(minRefreshInterval))) {
+            current = refresh(current);
+            key = current.keys().get(keyId);
+        }
+        return key;
+    }
+
+    /**
+     * Refreshes the key set if it is expired, so that the next verification does not wait for the fetch.
+     */
+    public void refreshIfExpired() {
+        KeySet current = keySet;
+        if (!clock.instant().isBefore(current.expiresAt())) {
+            refresh(current);
+        }
+    }
+
+    /**
+     * Fetches the key set, or waits for the fetch already running.
+     *
+     * @param seen the key set the caller found stale
+     * @return the refreshed key set, or the previous one if the fetch failed
+     */
+    private KeySet refresh(KeySet seen) {
+        CompletableFuture<KeySet> mine = new CompletableFuture<>();
+        CompletableFuture<KeySet> running = refreshing.compareAndExchange(null, mine);
+        if (running != null) {
+            return running.join();
+        }
+
+        try {
+            KeySet current = keySet;
+            if (current != seen) {
+                // Another caller refreshed between our read and our claim of the refresh
+                mine.complete(current);
+                return current;
+            }
+            KeySet fetched = fetch();
+            keySet = fetched;
+            mine.complete(fetched);
+            return fetched;
+        } catch (IOException | RuntimeException ex) {
+            Instant now = clock.instant();
+            KeySet previous = new KeySet(seen.keys(), now.plus(minRefreshInterval), now);
+            keySet = previous;
+            LOGGER.warn("Could not refresh the signing keys, keeping {} known keys", previous.keys().size(), ex);
+            mine.complete(previous);
+            return previous;
+        } finally {
+            refreshing.set(null);
+        }
+    }
+
+    private KeySet fetch() throws IOException {
+        JwksSource.JwksDocument document = source.fetch();
+        Map<String, PublicKey> keys = new HashMap<>();
+        for (JsonNode jwk : objectMapper.readTree(document.json()).path("keys")) {
+            String keyId = jwk.path("kid").asText(null);
+            String use = jwk.path("use").asText("sig");
+            if (keyId == null || !use.equals("sig")) {
+                continue;
+            }
+            PublicKey key = toPublicKey(jwk);
+            if (key != null) {
+                keys.put(keyId, key);
+            }
+        }
+        Instant now = clock.instant();
+        Duration maxAge = document.maxAge() != null ? document.maxAge() : defaultMaxAge;
+        LOGGER.info("Fetched {} signing keys, cached for {}", keys.size(), maxAge);
+        return new KeySet(Map.copyOf(keys), now.plus(maxAge), now);
+    }
+
+    /**
+     * Converts an RSA or P-256 JWK to a public key.
+     *
+     * @param jwk the JWK members
+     * @return the public key, or null for other key types
+     */
+    private static PublicKey toPublicKey(JsonNode jwk) {
+        try {
+            switch (jwk.path("kty").asText()) {
+                case "RSA" -> {
+                    return KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(
+                            unsigned(jwk.path("n").asText()), unsigned(jwk.path("e").asText())));
+                }
+                case "EC" -> {
+                    if (!"P-256".equals(jwk.path("crv").asText())) {
+                        return null;
+                    }
+                    AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+                    parameters.init(new ECGenParameterSpec("secp256r1"));
+                    ECPoint point = new ECPoint(unsigned(jwk.path("x").asText()), unsigned(jwk.path("y").asText()));
+                    return KeyFactory.getInstance("EC").generatePublic(
+                            new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class)));
+                }
+                default -> {
+                    return null;
+                }
+            }
+        } catch (GeneralSecurityException | IllegalArgumentException ex) {
+            LOGGER.warn("Skipping the malformed signing key {}", jwk.path("kid").asText(), ex);
+            return null;
+        }
+    }
+
+    private static BigInteger unsigned(String base64Url) {
+        return new BigInteger(1, Base64.getUrlDecoder().decode(base64Url));
+    }
+
+    /**
+     * Keys of the issuer by key id, with the instant they were fetched and the instant they expire.
+     */
+    private record KeySet(Map<String, PublicKey> keys, Instant expiresAt, Instant fetchedAt) {
+    }
+}
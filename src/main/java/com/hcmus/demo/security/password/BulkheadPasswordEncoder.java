@@ -0,0 +1,155 @@
+package com.hcmus.demo.security.password;
+
+import com.hcmus.demo.config.DaemonThreadFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Password encoder running the hashing of its delegate on a dedicated, size-limited executor.
+ * At most "threads" hashes run at once, so a login burst cannot take every core from the request threads,
+ * and at most "queue capacity" requests wait for a hashing thread. A request that finds the queue full,
+ * or waits longer than the timeout, fails fast with PasswordHashingUnavailableException (503).
+ */
+public class BulkheadPasswordEncoder implements PasswordEncoder, AutoCloseable {
+    private static final String UNAVAILABLE_MSG = "Too many authentication requests, please retry later";
+
+    @Getter
+    private final PasswordEncoder delegate; // The encoder doing the hashing
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+    private final long retryAfterSeconds;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Timer waitTimer;
+    private final Counter rejectedCounter;
+
+    public BulkheadPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity, long timeoutMillis,
+                                   MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.timeoutMillis = timeoutMillis;
+        this.retryAfterSeconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(timeoutMillis));
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new DaemonThreadFactory("password-hashing"),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.encodeTimer = Timer.builder("password.hashing")
+                .description("Time spent hashing on the password hashing executor")
+                .tag("operation", "encode")
+                .register(meterRegistry);
+        this.matchesTimer = Timer.builder("password.hashing")
+                .description("Time spent hashing on the password hashing executor")
+                .tag("operation", "matches")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("password.hashing.wait")
+                .description("Time spent waiting for a password hashing thread")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("password.hashing.rejected")
+                .description("Password hashing requests rejected because the executor was saturated")
+                .register(meterRegistry);
+        Gauge.builder("password.hashing.queue.depth", executor.getQueue(), BlockingQueue::size)
+                .description("Password hashing requests waiting for a thread")
+                .register(meterRegistry);
+        Gauge.builder("password.hashing.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Password hashes running")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Encodes the raw password on the hashing executor.
+     *
+     * @param rawPassword the password to encode
+     * @return the encoded password
+     * @throws PasswordHashingUnavailableException if the executor is saturated
+     */
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return execute(encodeTimer, () -> delegate.encode(rawPassword));
+    }
+
+    /**
+     * Checks the raw password against the encoded password on the hashing executor.
+     *
+     * @param rawPassword     the password to check
+     * @param encodedPassword the stored encoded password
+     * @return true if the passwords match
+     * @throws PasswordHashingUnavailableException if the executor is saturated
+     */
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return execute(matchesTimer, () -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Checks whether the encoded password should be encoded again. This only parses the hash,
+     * so it runs on the calling thread.
+     *
+     * @param encodedPassword the stored encoded password
+     * @return true if the password should be encoded again
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * Stops the hashing threads.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs the hashing task on the executor and waits for its result.
+     *
+     * @param timer the timer of the operation
+     * @param task  the hashing task
+     * @return the result of the task
+     * @throws PasswordHashingUnavailableException if the task is rejected or times out
+     */
+    private <T> T execute(Timer timer, Callable<T> task) {
+        long queuedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                waitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                return timer.recordCallable(task);
+            });
+        } catch (RejectedExecutionException ex) {
+            rejectedCounter.increment();
+            throw new PasswordHashingUnavailableException(UNAVAILABLE_MSG, retryAfterSeconds);
+        }
+
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            rejectedCounter.increment();
+            throw new PasswordHashingUnavailableException(UNAVAILABLE_MSG, retryAfterSeconds);
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingUnavailableException(UNAVAILABLE_MSG, retryAfterSeconds);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+}
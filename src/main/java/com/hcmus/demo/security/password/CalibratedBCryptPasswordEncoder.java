@@ -0,0 +1,95 @@
+package com.hcmus.demo.security.password;
+
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt encoder whose strength is calibrated on the host at startup.
+ * The calibration picks the highest strength whose password check fits the latency budget,
+ * never going below the configured floor. Stored hashes of any other strength, higher or lower,
+ * are reported for upgrade, so they are rehashed at the target strength on the next successful login.
+ */
+public class CalibratedBCryptPasswordEncoder extends BCryptPasswordEncoder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CalibratedBCryptPasswordEncoder.class);
+    private static final Pattern BCRYPT_PREFIX = Pattern.compile("^\\$2[abxy]?\\$(\\d\\d)\\$");
+    private static final String CALIBRATION_PASSWORD = "calibration-password";
+    private static final int CALIBRATION_RUNS = 3;
+
+    @Getter
+    private final int strength; // The target BCrypt strength (log2 of the number of rounds)
+
+    private CalibratedBCryptPasswordEncoder(int strength) {
+        super(strength);
+        this.strength = strength;
+    }
+
+    /**
+     * Benchmarks BCrypt on this host and creates an encoder at the highest strength fitting the budget.
+     *
+     * @param budget      the maximum duration of one password check
+     * @param minStrength the lowest strength allowed, used even if it does not fit the budget
+     * @param maxStrength the highest strength allowed
+     * @return the calibrated encoder
+     */
+    public static CalibratedBCryptPasswordEncoder calibrate(Duration budget, int minStrength, int maxStrength) {
+        long budgetNanos = budget.toNanos();
+        int chosen = minStrength;
+        for (int strength = minStrength; strength <= maxStrength; strength++) {
+            long nanos = measure(strength);
+            LOGGER.debug("BCrypt strength {} takes {} ms", strength, nanos / 1_000_000);
+            if (nanos > budgetNanos) {
+                if (strength == minStrength) {
+                    LOGGER.warn("BCrypt strength {} takes {} ms, above the {} ms budget", strength,
+                            nanos / 1_000_000, budget.toMillis());
+                }
+                break;
+            }
+            chosen = strength;
+            // Each strength doubles the work: stop before measuring a strength that cannot fit
+            if (nanos * 2 > budgetNanos) {
+                break;
+            }
+        }
+        LOGGER.info("Calibrated BCrypt strength {} for a {} ms budget", chosen, budget.toMillis());
+        return new CalibratedBCryptPasswordEncoder(chosen);
+    }
+
+    /**
+     * Measures a password check at the given strength, keeping the fastest of a few runs.
+     *
+     * @param strength the BCrypt strength
+     * @return the duration of a password check in nanoseconds
+     */
+    private static long measure(int strength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        String hash = encoder.encode(CALIBRATION_PASSWORD);
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < CALIBRATION_RUNS; i++) {
+            long start = System.nanoTime();
+            encoder.matches(CALIBRATION_PASSWORD, hash);
+            fastest = Math.min(fastest, System.nanoTime() - start);
+        }
+        return fastest;
+    }
+
+    /**
+     * Checks whether the hash was computed at another strength than the target one.
+     *
+     * @param encodedPassword the stored BCrypt hash
+     * @return true if the password should be hashed again at the target strength
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_PREFIX.matcher(encodedPassword);
+        return !matcher.find() || Integer.parseInt(matcher.group(1)) != strength;
+    }
+}
@@ -0,0 +1,20 @@
+package com.hcmus.demo.security.password;
+
+import com.hcmus.demo.exception_handler.exception.ServiceUnavailableException;
+
+/**
+ * Custom exception class for rejected password hashing.
+ * This exception is thrown when the password hashing executor is saturated or does not answer in time.
+ */
+public class PasswordHashingUnavailableException extends ServiceUnavailableException {
+
+    /**
+     * Constructs a new PasswordHashingUnavailableException with the specified detail message.
+     *
+     * @param message           the detail message
+     * @param retryAfterSeconds the suggested delay before retrying
+     */
+    public PasswordHashingUnavailableException(String message, long retryAfterSeconds) {
+        super(message, retryAfterSeconds);
+    }
+}
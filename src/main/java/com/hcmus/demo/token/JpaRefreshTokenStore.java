@@ -0,0 +1,92 @@
+package com.hcmus.demo.token;
+
+import com.hcmus.demo.model.RefreshToken;
+import com.hcmus.demo.user.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.Optional;
+
+/**
+ * Refresh token store writing every change synchronously through the repository.
+ * This is the default store: nothing is lost if the node dies, and every node sees every token,
+ * but each issuance takes a database round trip on the connection pool.
+ */
+@Component
+@ConditionalOnProperty(name = "app.refresh-token.store", havingValue = "jpa", matchIfMissing = true)
+public class JpaRefreshTokenStore implements RefreshTokenStore {
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepo;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    /**
+     * Inserts the refresh token, referencing its user without loading it.
+     *
+     * @param token the refresh token
+     */
+    @Override
+    @Transactional
+    public void save(RefreshTokenRecord token) {
+        RefreshToken refreshToken = new RefreshToken();
+        refreshToken.setU(userRepo.getReferenceById(token.userId()));
+        refreshToken.setSelector(token.selector());
+        refreshToken.setToken(token.tokenHash());
+        refreshToken.setFamilyId(token.familyId());
+        refreshToken.setExpiryTime(token.expiryTime());
+        refreshToken.setConsumedAt(token.consumedAt());
+        refreshTokenRepo.save(refreshToken);
+    }
+
+    /**
+     * Reads the refresh token with the given selector from the database.
+     *
+     * @param selector the selector part of the refresh token
+     * @return the refresh token, or empty if no token has this selector
+     */
+    @Override
+    public Optional<RefreshTokenRecord> findBySelector(String selector) {
+        return refreshTokenRepo.findBySelector(selector);
+    }
+
+    /**
+     * Marks the refresh token as consumed with a conditional update.
+     *
+     * @param selector   the selector of the refresh token
+     * @param consumedAt the consumption time
+     * @return true if the token was consumed by this call
+     */
+    @Override
+    @Transactional
+    public boolean consume(String selector, Date consumedAt) {
+        return refreshTokenRepo.consumeBySelector(selector, consumedAt) > 0;
+    }
+
+    /**
+     * Deletes the consumed refresh tokens of a family, except the given one.
+     *
+     * @param familyId     the family of the refresh tokens
+     * @param keepSelector the selector of the consumed token to keep
+     */
+    @Override
+    @Transactional
+    public void deleteConsumed(String familyId, String keepSelector) {
+        refreshTokenRepo.deleteConsumedByFamilyId(familyId, keepSelector);
+    }
+
+    /**
+     * Deletes every refresh token of a family.
+     *
+     * @param familyId the family of the refresh tokens
+     */
+    @Override
+    @Transactional
+    public void revokeFamily(String familyId) {
+        refreshTokenRepo.deleteByFamilyId(familyId);
+    }
+}
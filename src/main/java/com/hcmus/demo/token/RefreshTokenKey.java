@@ -0,0 +1,12 @@
+package com.hcmus.demo.token;
+
+import java.util.Date;
+
+/**
+ * Keyset position of a refresh token along the expiry index.
+ *
+ * @param id         the id of the refresh token
+ * @param expiryTime the expiry time of the refresh token
+ */
+public record RefreshTokenKey(Integer id, Date expiryTime) {
+}
@@ -0,0 +1,126 @@
+package com.hcmus.demo.token;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Deletes expired refresh tokens in small batches.
+ * Each batch walks the expiry index from the last deleted key and is deleted in its own short transaction,
+ * with a pause between batches, so the purge never holds row locks long enough to stall logins.
+ * A run stops when no expired token is left or when its time budget is spent; the rest is left for the next run.
+ */
+@Component
+public class RefreshTokenPurgeEngine {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RefreshTokenPurgeEngine.class);
+
+    private final RefreshTokenRepository repo;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter deletedCounter;
+    private final AtomicLong backlog = new AtomicLong(); // Expired tokens left after the last batch
+    private final AtomicLong rowsPerSecond = new AtomicLong(); // Deletion rate of the last run
+
+    @Value("${app.refresh-token.purge.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.refresh-token.purge.pause-ms:50}")
+    private long pauseMillis;
+
+    @Value("${app.refresh-token.purge.time-budget-ms:10000}")
+    private long timeBudgetMillis;
+
+    public RefreshTokenPurgeEngine(RefreshTokenRepository repo, PlatformTransactionManager transactionManager,
+                                   MeterRegistry meterRegistry) {
+        this.repo = repo;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.deletedCounter = Counter.builder("refresh.token.purge.deleted")
+                .description("Expired refresh tokens deleted by the purge")
+                .register(meterRegistry);
+        Gauge.builder("refresh.token.purge.backlog", backlog, AtomicLong::get)
+                .description("Expired refresh tokens waiting to be purged")
+                .register(meterRegistry);
+        Gauge.builder("refresh.token.purge.rows.per.second", rowsPerSecond, AtomicLong::get)
+                .description("Deletion rate of the last purge run")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Deletes the refresh tokens expired at the start of the run, batch by batch, within the time budget.
+     *
+     * @return the number of deleted refresh tokens
+     */
+    public int purge() {
+        return purge(() -> true);
+    }
+
+    /**
+     * Deletes the refresh tokens expired at the start of the run, batch by batch, within the time budget.
+     * The run stops before the next batch as soon as the guard fails, e.g. when the node lost its job lease.
+     *
+     * @param guard checked before each batch
+     * @return the number of deleted refresh tokens
+     */
+    public int purge(BooleanSupplier guard) {
+        Date now = new Date();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis);
+        backlog.set(repo.countByExpiryTimeLessThanEqual(now));
+
+        Date lastExpiry = new Date(0);
+        Integer lastId = 0;
+        int deleted = 0;
+        while (System.nanoTime() < deadline && guard.getAsBoolean()) {
+            List<RefreshTokenKey> batch = repo.findExpiredAfter(now, lastExpiry, lastId, PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            List<Integer> ids = batch.stream().map(RefreshTokenKey::id).toList();
+            Integer rows = transactionTemplate.execute(status -> repo.deleteByIdIn(ids));
+            int batchDeleted = rows == null ? 0 : rows;
+            deleted += batchDeleted;
+            deletedCounter.increment(batchDeleted);
+            backlog.addAndGet(-batchDeleted);
+
+            RefreshTokenKey last = batch.get(batch.size() - 1);
+            lastExpiry = last.expiryTime();
+            lastId = last.id();
+            if (batch.size() < batchSize || !pause()) {
+                break;
+            }
+        }
+
+        long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        rowsPerSecond.set(deleted * 1000L / elapsedMillis);
+        LOGGER.info("Purged {} expired refresh tokens in {} ms, {} left", deleted, elapsedMillis, Math.max(0, backlog.get()));
+        return deleted;
+    }
+
+    /**
+     * Pauses between two batches so that other transactions can take the released locks.
+     *
+     * @return false if the thread was interrupted and the run should stop
+     */
+    private boolean pause() {
+        try {
+            Thread.sleep(pauseMillis);
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.hcmus.demo.token;
+
+import java.util.Date;
+
+/**
+ * Refresh token row reduced to the columns needed to issue, validate and rotate the token.
+ * The user is referenced by id only.
+ *
+ * @param selector   the selector part of the refresh token
+ * @param tokenHash  the stored hash of the token verifier
+ * @param userId     the identifier of the user owning the token
+ * @param familyId   the family of the token
+ * @param expiryTime the expiry time of the token
+ * @param consumedAt the time the token was exchanged for its successor, null if it is still live
+ */
+public record RefreshTokenRecord(String selector, String tokenHash, Long userId, String familyId,
+                                 Date expiryTime, Date consumedAt) {
+
+    /**
+     * Returns a copy of this token marked as consumed.
+     *
+     * @param time the consumption time
+     * @return the consumed token
+     */
+    public RefreshTokenRecord consumed(Date time) {
+        return new RefreshTokenRecord(selector, tokenHash, userId, familyId, expiryTime, time);
+    }
+}
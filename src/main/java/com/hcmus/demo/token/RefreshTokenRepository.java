@@ -1,12 +1,15 @@
 package com.hcmus.demo.token;
 
 import com.hcmus.demo.model.RefreshToken;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository interface for managing RefreshToken entities.
@@ -16,20 +19,86 @@ import java.util.List;
 public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
 
     /**
-     * Finds all refresh tokens associated with the given username.
+     * Finds the refresh token with the given selector.
+     * Only the columns needed for validation are read; the user is not loaded.
+     *
+     * @param selector the selector part of the refresh token
+     * @return the projection of the refresh token, or empty if no token has this selector
+     */
+    @Query("select new com.hcmus.demo.token.RefreshTokenRecord(rt.selector, rt.token, rt.u.id, rt.familyId, "
+            + "rt.expiryTime, rt.consumedAt) from RefreshToken rt where rt.selector = ?1")
+    Optional<RefreshTokenRecord> findBySelector(String selector);
+
+    /**
+     * Marks the refresh token with the given selector as consumed, unless it has already been consumed.
+     *
+     * @param selector   the selector of the refresh token
+     * @param consumedAt the consumption time
+     * @return 1 if the token was consumed by this call, 0 if it had already been consumed
+     */
+    @Query("update RefreshToken rt set rt.consumedAt = ?2 where rt.selector = ?1 and rt.consumedAt is null")
+    @Modifying
+    int consumeBySelector(String selector, Date consumedAt);
+
+    /**
+     * Deletes the consumed refresh tokens of a family, except the given one.
+     *
+     * @param familyId     the family of the refresh tokens
+     * @param keepSelector the selector of the consumed token to keep for replay detection
+     * @return the number of deleted refresh tokens
+     */
+    @Query("delete from RefreshToken rt where rt.familyId = ?1 and rt.consumedAt is not null and rt.selector <> ?2")
+    @Modifying
+    int deleteConsumedByFamilyId(String familyId, String keepSelector);
+
+    /**
+     * Deletes every refresh token of a family.
+     *
+     * @param familyId the family of the refresh tokens
+     * @return the number of deleted refresh tokens
+     */
+    @Query("delete from RefreshToken rt where rt.familyId = ?1")
+    @Modifying
+    int deleteByFamilyId(String familyId);
+
+    /**
+     * Finds the legacy refresh tokens, issued before selectors were introduced, of the given username.
      *
      * @param username the username to search for
-     * @return a list of refresh tokens associated with the given username
+     * @return a list of legacy refresh tokens with their user
+     */
+    @Query("select rt from RefreshToken rt join fetch rt.u where rt.selector is null and rt.u.username = ?1")
+    List<RefreshToken> findLegacyByUsername(String username);
+
+    /**
+     * Counts the refresh tokens expired at the given time.
+     *
+     * @param now the reference time
+     * @return the number of expired refresh tokens
+     */
+    long countByExpiryTimeLessThanEqual(Date now);
+
+    /**
+     * Finds the next expired refresh tokens after the given keyset position, walking the expiry index.
+     *
+     * @param now        the reference time
+     * @param lastExpiry the expiry time of the last token of the previous batch
+     * @param lastId     the id of the last token of the previous batch
+     * @param batch      the size of the batch
+     * @return the keys of the expired refresh tokens, ordered by expiry time and id
      */
-    @Query("select rt from RefreshToken rt where rt.u.username = ?1")
-    List<RefreshToken> findByUsername(String username);
+    @Query("select new com.hcmus.demo.token.RefreshTokenKey(rt.id, rt.expiryTime) from RefreshToken rt "
+            + "where rt.expiryTime <= ?1 and (rt.expiryTime > ?2 or (rt.expiryTime = ?2 and rt.id > ?3)) "
+            + "order by rt.expiryTime, rt.id")
+    List<RefreshTokenKey> findExpiredAfter(Date now, Date lastExpiry, Integer lastId, Pageable batch);
 
     /**
-     * Deletes all expired refresh tokens from the database.
+     * Deletes the refresh tokens with the given ids.
      *
+     * @param ids the ids of the refresh tokens
      * @return the number of deleted refresh tokens
      */
-    @Query("delete from RefreshToken rt where rt.expiryTime <= CURRENT_TIME")
+    @Query("delete from RefreshToken rt where rt.id in ?1")
     @Modifying
-    int deleteByExpiryTime();
+    int deleteByIdIn(List<Integer> ids);
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package com.hcmus.demo.token;
+
+import java.util.Date;
+import java.util.Optional;
+
+/**
+ * Storage of selector/verifier refresh tokens.
+ * The implementation is selected with "app.refresh-token.store": "jpa" (default) writes every change
+ * through the repository, "write-behind" keeps live tokens in memory and persists them in batches.
+ * Legacy BCrypt tokens are not handled by the store and stay on the repository.
+ */
+public interface RefreshTokenStore {
+
+    /**
+     * Stores a newly issued refresh token.
+     *
+     * @param token the refresh token
+     */
+    void save(RefreshTokenRecord token);
+
+    /**
+     * Finds the refresh token with the given selector.
+     *
+     * @param selector the selector part of the refresh token
+     * @return the refresh token, or empty if no token has this selector
+     */
+    Optional<RefreshTokenRecord> findBySelector(String selector);
+
+    /**
+     * Marks the refresh token as consumed, unless it has already been consumed.
+     *
+     * @param selector   the selector of the refresh token
+     * @param consumedAt the consumption time
+     * @return true if the token was consumed by this call, false if it had already been consumed
+     */
+    boolean consume(String selector, Date consumedAt);
+
+    /**
+     * Deletes the consumed refresh tokens of a family, except the given one.
+     *
+     * @param familyId     the family of the refresh tokens
+     * @param keepSelector the selector of the consumed token to keep for replay detection
+     */
+    void deleteConsumed(String familyId, String keepSelector);
+
+    /**
+     * Deletes every refresh token of a family.
+     *
+     * @param familyId the family of the refresh tokens
+     */
+    void revokeFamily(String familyId);
+}
@@ -0,0 +1,20 @@
+package com.hcmus.demo.token;
+
+import com.hcmus.demo.exception_handler.exception.ServiceUnavailableException;
+
+/**
+ * Custom exception class for refresh token changes the store cannot accept.
+ * This exception is thrown when the write-behind queue stays full, i.e. the database cannot keep up.
+ */
+public class RefreshTokenStoreUnavailableException extends ServiceUnavailableException {
+
+    /**
+     * Constructs a new RefreshTokenStoreUnavailableException with the specified detail message.
+     *
+     * @param message           the detail message
+     * @param retryAfterSeconds the suggested delay before retrying
+     */
+    public RefreshTokenStoreUnavailableException(String message, long retryAfterSeconds) {
+        super(message, retryAfterSeconds);
+    }
+}
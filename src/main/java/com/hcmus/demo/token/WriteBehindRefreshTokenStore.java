@@ -0,0 +1,483 @@
+package com.hcmus.demo.token;
+
+import com.hcmus.demo.config.DaemonThreadFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refresh token store keeping live tokens in memory and persisting changes behind the request.
+ * Issuing, consuming and revoking a token only touch a concurrent index; the changes are queued
+ * and a single flusher thread writes them in order, in JDBC batches, at most one flush interval later.
+ * On startup the index is rebuilt from the live rows of the table.
+ * A token missing from the index, e.g. issued by another node, is read through from the table once its
+ * insert has been flushed there; consumption is atomic on this node only, so several nodes should use
+ * sticky sessions or the JPA store. Changes still queued when the node dies are lost: at worst the
+ * refresh tokens issued during the last flush interval must be replaced by a new login.
+ * A revoked family is remembered until its last token would have expired: a successor saved by a rotation
+ * racing the revocation is refused, and the family's rows are never read through again.
+ */
+@Component
+@ConditionalOnProperty(name = "app.refresh-token.store", havingValue = "write-behind")
+public class WriteBehindRefreshTokenStore implements RefreshTokenStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindRefreshTokenStore.class);
+
+    private static final String SELECT_LIVE = "SELECT selector, token, user_id, family_id, expiry_time, consumed_at "
+            + "FROM refresh_tokens WHERE selector IS NOT NULL AND expiry_time > ?";
+    private static final String INSERT = "INSERT INTO refresh_tokens "
+            + "(selector, token, user_id, family_id, expiry_time, consumed_at) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String CONSUME = "UPDATE refresh_tokens SET consumed_at = ? "
+            + "WHERE selector = ? AND consumed_at IS NULL";
+    private static final String DELETE_CONSUMED = "DELETE FROM refresh_tokens "
+            + "WHERE family_id = ? AND consumed_at IS NOT NULL AND selector <> ?";
+    private static final String DELETE_FAMILY = "DELETE FROM refresh_tokens WHERE family_id = ?";
+    private static final String FAMILY_REVOKED_MSG = "Refresh token family has been revoked";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RefreshTokenRepository refreshTokenRepo;
+    private final Map<String, RefreshTokenRecord> tokens = new ConcurrentHashMap<>(); // Live tokens by selector
+    private final Map<String, Set<String>> families = new ConcurrentHashMap<>(); // Selectors by family
+    private final Map<String, Date> revokedFamilies = new ConcurrentHashMap<>(); // Revoked families, until last expiry
+    private final BlockingQueue<PendingWrite> pending; // Changes waiting to be flushed, in order
+    private final Counter flushedCounter;
+    private final Counter flushFailureCounter;
+    private final Counter droppedCounter;
+    private final Timer flushTimer;
+
+    @Value("${app.refresh-token.write-behind.flush-interval-ms:100}")
+    private long flushIntervalMillis;
+
+    @Value("${app.refresh-token.write-behind.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.refresh-token.write-behind.enqueue-timeout-ms:1000}")
+    private long enqueueTimeoutMillis;
+
+    @Value("${app.refresh-token.write-behind.sweep-interval-ms:60000}")
+    private long sweepIntervalMillis;
+
+    @Value("${app.security.jwt.refresh-token.expiration}")
+    private int refreshTokenExpiration; // Lifetime of a refresh token, in minutes
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public WriteBehindRefreshTokenStore(DataSource dataSource, PlatformTransactionManager transactionManager,
+                                        RefreshTokenRepository refreshTokenRepo, MeterRegistry meterRegistry,
+                                        @Value("${app.refresh-token.write-behind.queue-capacity:100000}") int queueCapacity) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.refreshTokenRepo = refreshTokenRepo;
+        this.pending = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushedCounter = Counter.builder("refresh.token.store.flushed")
+                .description("Refresh token changes written to the database")
+                .register(meterRegistry);
+        this.flushFailureCounter = Counter.builder("refresh.token.store.flush.failures")
+                .description("Failed refresh token flushes, retried on the next interval")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("refresh.token.store.dropped")
+                .description("Refresh token changes rejected by the database and dropped")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("refresh.token.store.flush")
+                .description("Duration of a refresh token flush")
+                .register(meterRegistry);
+        Gauge.builder("refresh.token.store.live", tokens, Map::size)
+                .description("Refresh tokens held in memory")
+                .register(meterRegistry);
+        Gauge.builder("refresh.token.store.pending", pending, BlockingQueue::size)
+                .description("Refresh token changes waiting to be flushed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Rebuilds the index from the live refresh tokens of the table and starts the flusher thread.
+     */
+    @PostConstruct
+    void start() {
+        jdbcTemplate.query(SELECT_LIVE, rs -> {
+            Timestamp consumedAt = rs.getTimestamp("consumed_at");
+            index(new RefreshTokenRecord(
+                    rs.getString("selector"),
+                    rs.getString("token"),
+                    rs.getLong("user_id"),
+                    rs.getString("family_id"),
+                    new Date(rs.getTimestamp("expiry_time").getTime()),
+                    consumedAt == null ? null : new Date(consumedAt.getTime())));
+        }, new Timestamp(System.currentTimeMillis()));
+        LOGGER.info("Loaded {} live refresh tokens", tokens.size());
+
+        running = true;
+        flusher = new DaemonThreadFactory("refresh-token-flusher").newThread(this::runFlusher);
+        flusher.start();
+    }
+
+    /**
+     * Stops the flusher thread and writes the remaining changes before the datasource is closed.
+     */
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(10) + flushIntervalMillis);
+
+        List<PendingWrite> remaining = new ArrayList<>();
+        while (pending.drainTo(remaining, batchSize) > 0) {
+            if (!write(remaining)) {
+                LOGGER.error("Lost {} refresh token changes at shutdown", remaining.size() + pending.size());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds the refresh token to the index and queues its insert, unless its family has been revoked.
+     *
+     * @param token the refresh token
+     * @throws IllegalStateException if the family of the token has been revoked
+     * @throws RefreshTokenStoreUnavailableException if the write queue stays full
+     */
+    @Override
+    public void save(RefreshTokenRecord token) {
+        if (revokedFamilies.containsKey(token.familyId())) {
+            throw new IllegalStateException(FAMILY_REVOKED_MSG);
+        }
+        enqueue(new PendingWrite(WriteKind.INSERT, token, null, null));
+        index(token);
+
+        // A revocation racing this save may have missed the token: remove it again, and its row after the insert
+        if (revokedFamilies.containsKey(token.familyId())) {
+            unindex(token);
+            enqueue(new PendingWrite(WriteKind.DELETE_FAMILY, null, token.familyId(), null));
+            throw new IllegalStateException(FAMILY_REVOKED_MSG);
+        }
+    }
+
+    /**
+     * Finds the refresh token in the index, or reads it through from the table if it is not there.
+     *
+     * @param selector the selector part of the refresh token
+     * @return the refresh token, or empty if no token has this selector
+     */
+    @Override
+    public Optional<RefreshTokenRecord> findBySelector(String selector) {
+        RefreshTokenRecord token = tokens.get(selector);
+        if (token != null) {
+            return Optional.of(token);
+        }
+
+        // The row of a revoked family may still be in the table until the delete is flushed
+        Optional<RefreshTokenRecord> stored = refreshTokenRepo.findBySelector(selector)
+                .filter(found -> !revokedFamilies.containsKey(found.familyId()));
+        stored.ifPresent(this::index);
+        return stored.map(found -> tokens.getOrDefault(selector, found));
+    }
+
+    /**
+     * Marks the refresh token as consumed with a compare-and-set on the index, and queues the update.
+     *
+     * @param selector   the selector of the refresh token
+     * @param consumedAt the consumption time
+     * @return true if the token was consumed by this call
+     * @throws RefreshTokenStoreUnavailableException if the write queue stays full
+     */
+    @Override
+    public boolean consume(String selector, Date consumedAt) {
+        RefreshTokenRecord token = tokens.get(selector);
+        if (token == null || token.consumedAt() != null) {
+            return false;
+        }
+
+        RefreshTokenRecord consumed = token.consumed(consumedAt);
+        if (!tokens.replace(selector, token, consumed)) {
+            return false;
+        }
+        try {
+            enqueue(new PendingWrite(WriteKind.CONSUME, consumed, null, null));
+        } catch (RuntimeException ex) {
+            tokens.replace(selector, consumed, token);
+            throw ex;
+        }
+        return true;
+    }
+
+    /**
+     * Removes the consumed refresh tokens of a family from the index, except the given one, and queues their delete.
+     *
+     * @param familyId     the family of the refresh tokens
+     * @param keepSelector the selector of the consumed token to keep
+     */
+    @Override
+    public void deleteConsumed(String familyId, String keepSelector) {
+        enqueue(new PendingWrite(WriteKind.DELETE_CONSUMED, null, familyId, keepSelector));
+        Set<String> selectors = families.get(familyId);
+        if (selectors == null) {
+            return;
+        }
+        for (String selector : selectors) {
+            RefreshTokenRecord token = tokens.get(selector);
+            if (token != null && token.consumedAt() != null && !selector.equals(keepSelector)) {
+                unindex(token);
+            }
+        }
+    }
+
+    /**
+     * Removes every refresh token of a family from the index and queues their delete.
+     * Until the last token of the family would have expired, i.e. one token lifetime from now,
+     * no token of the family is saved or read through from the table.
+     *
+     * @param familyId the family of the refresh tokens
+     */
+    @Override
+    public void revokeFamily(String familyId) {
+        revokedFamilies.put(familyId, new Date(System.currentTimeMillis()
+                + TimeUnit.MINUTES.toMillis(refreshTokenExpiration)));
+        enqueue(new PendingWrite(WriteKind.DELETE_FAMILY, null, familyId, null));
+        Set<String> selectors = families.remove(familyId);
+        if (selectors != null) {
+            selectors.forEach(tokens::remove);
+        }
+    }
+
+    private void index(RefreshTokenRecord token) {
+        tokens.putIfAbsent(token.selector(), token);
+        families.computeIfAbsent(token.familyId(), family -> ConcurrentHashMap.newKeySet()).add(token.selector());
+    }
+
+    private void unindex(RefreshTokenRecord token) {
+        tokens.remove(token.selector(), token);
+        families.computeIfPresent(token.familyId(), (family, selectors) -> {
+            selectors.remove(token.selector());
+            return selectors.isEmpty() ? null : selectors;
+        });
+    }
+
+    /**
+     * Queues a change, waiting for room if the flusher is behind.
+     *
+     * @param write the change
+     * @throws RefreshTokenStoreUnavailableException if the queue stays full, i.e. the database cannot keep up
+     */
+    private void enqueue(PendingWrite write) {
+        try {
+            if (!pending.offer(write, enqueueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new RefreshTokenStoreUnavailableException("Refresh token write queue is full",
+                        Math.max(1, TimeUnit.MILLISECONDS.toSeconds(enqueueTimeoutMillis)));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing a refresh token write", ex);
+        }
+    }
+
+    /**
+     * Flusher loop: waits for a change, lets a batch build up for at most the flush interval, and writes it.
+     * A batch failing on a transient error, e.g. the database is down, is kept and retried after the interval,
+     * so changes are never reordered. A batch rejected by the database is written one change at a time instead.
+     * Expired tokens are swept from the index on the sweep interval.
+     */
+    private void runFlusher() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        long nextSweep = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sweepIntervalMillis);
+        while (running) {
+            try {
+                if (batch.isEmpty()) {
+                    fill(batch);
+                }
+                if (!batch.isEmpty()) {
+                    if (!write(batch)) {
+                        Thread.sleep(flushIntervalMillis);
+                    }
+                }
+                if (System.nanoTime() - nextSweep >= 0) {
+                    sweepExpired();
+                    nextSweep = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sweepIntervalMillis);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // Changes taken from the queue but not written yet are written before the final flush at shutdown
+        if (!batch.isEmpty() && !write(batch)) {
+            LOGGER.error("Lost {} refresh token changes at shutdown", batch.size());
+        }
+    }
+
+    private void fill(List<PendingWrite> batch) throws InterruptedException {
+        PendingWrite first = pending.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        while (batch.size() < batchSize) {
+            pending.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                break;
+            }
+            PendingWrite next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * Writes the changes in one transaction, grouping consecutive changes of the same kind in one JDBC batch.
+     * If the database rejects the batch, e.g. a token of a deleted user, the changes are written one at a time
+     * and those it rejects are dropped, so that one bad change cannot hold up all the others.
+     *
+     * @param batch the changes, in queue order; the changes written or dropped are removed from it
+     * @return true if every change was written or dropped, false if the remaining changes must be retried
+     */
+    private boolean write(List<PendingWrite> batch) {
+        try {
+            writeInTransaction(batch);
+        } catch (RuntimeException ex) {
+            if (!isRejected(ex)) {
+                flushFailureCounter.increment();
+                LOGGER.warn("Could not flush {} refresh token changes, retrying", batch.size(), ex);
+                return false;
+            }
+            LOGGER.warn("Refresh token batch of {} changes rejected, writing them one at a time", batch.size(), ex);
+            return writeOneByOne(batch);
+        }
+
+        flushedCounter.increment(batch.size());
+        batch.clear();
+        return true;
+    }
+
+    private boolean writeOneByOne(List<PendingWrite> batch) {
+        Iterator<PendingWrite> changes = batch.iterator();
+        while (changes.hasNext()) {
+            PendingWrite write = changes.next();
+            try {
+                writeInTransaction(List.of(write));
+                flushedCounter.increment();
+            } catch (RuntimeException ex) {
+                if (!isRejected(ex)) {
+                    flushFailureCounter.increment();
+                    LOGGER.warn("Could not flush {} refresh token changes, retrying", batch.size(), ex);
+                    return false;
+                }
+                droppedCounter.increment();
+                LOGGER.error("Dropped a refresh token {} of family {} rejected by the database", write.kind(),
+                        write.token() != null ? write.token().familyId() : write.familyId(), ex);
+            }
+            changes.remove();
+        }
+        return true;
+    }
+
+    private void writeInTransaction(List<PendingWrite> batch) {
+        flushTimer.record(() -> transactionTemplate.executeWithoutResult(status -> {
+            int start = 0;
+            while (start < batch.size()) {
+                WriteKind kind = batch.get(start).kind();
+                int end = start + 1;
+                while (end < batch.size() && batch.get(end).kind() == kind) {
+                    end++;
+                }
+                writeRun(kind, batch.subList(start, end));
+                start = end;
+            }
+        }));
+    }
+
+    /**
+     * Tells a change the database will never accept, e.g. a constraint violation, from a failure worth retrying.
+     *
+     * @param ex the failure of a write
+     * @return true if retrying the same changes would fail again
+     */
+    private static boolean isRejected(RuntimeException ex) {
+        return ex instanceof NonTransientDataAccessException && !(ex instanceof DataAccessResourceFailureException);
+    }
+
+    private void writeRun(WriteKind kind, List<PendingWrite> run) {
+        switch (kind) {
+            case INSERT -> jdbcTemplate.batchUpdate(INSERT, run, run.size(), (ps, write) -> {
+                RefreshTokenRecord token = write.token();
+                ps.setString(1, token.selector());
+                ps.setString(2, token.tokenHash());
+                ps.setLong(3, token.userId());
+                ps.setString(4, token.familyId());
+                ps.setTimestamp(5, new Timestamp(token.expiryTime().getTime()));
+                ps.setTimestamp(6, token.consumedAt() == null ? null : new Timestamp(token.consumedAt().getTime()));
+            });
+            case CONSUME -> jdbcTemplate.batchUpdate(CONSUME, run, run.size(), (ps, write) -> {
+                ps.setTimestamp(1, new Timestamp(write.token().consumedAt().getTime()));
+                ps.setString(2, write.token().selector());
+            });
+            case DELETE_CONSUMED -> jdbcTemplate.batchUpdate(DELETE_CONSUMED, run, run.size(), (ps, write) -> {
+                ps.setString(1, write.familyId());
+                ps.setString(2, write.keepSelector());
+            });
+            case DELETE_FAMILY -> jdbcTemplate.batchUpdate(DELETE_FAMILY, run, run.size(),
+                    (ps, write) -> ps.setString(1, write.familyId()));
+        }
+    }
+
+    /**
+     * Removes the expired refresh tokens from the index, and the revoked families whose tokens have all expired.
+     * Their rows are deleted by the purge job.
+     */
+    private void sweepExpired() {
+        Date now = new Date();
+        int swept = 0;
+        for (RefreshTokenRecord token : tokens.values()) {
+            if (!token.expiryTime().after(now)) {
+                unindex(token);
+                swept++;
+            }
+        }
+        revokedFamilies.values().removeIf(lastExpiry -> !lastExpiry.after(now));
+        LOGGER.debug("Swept {} expired refresh tokens from memory", swept);
+    }
+
+    private enum WriteKind {
+        INSERT, CONSUME, DELETE_CONSUMED, DELETE_FAMILY
+    }
+
+    /**
+     * A change waiting to be written.
+     *
+     * @param kind         the kind of change
+     * @param token        the inserted or consumed token
+     * @param familyId     the family of a delete
+     * @param keepSelector the consumed token kept by a delete of consumed tokens
+     */
+    private record PendingWrite(WriteKind kind, RefreshTokenRecord token, String familyId, String keepSelector) {
+    }
+}
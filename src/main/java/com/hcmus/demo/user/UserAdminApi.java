@@ -0,0 +1,103 @@
+package com.hcmus.demo.user;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+
+/**
+ * REST controller for the admin console.
+ * This class provides endpoints for listing, searching, exporting and importing users. Access is restricted to the
+ * users with the ADMIN role.
+ */
+@RestController
+@RequestMapping("/admin/users")
+@RequiredArgsConstructor
+public class UserAdminApi {
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final String EXPORT_PERMIT_KEY = UserAdminApi.class.getName() + ".exportPermit";
+
+    private final UserListingService userListingService;
+    private final UserImportService userImportService;
+
+    /**
+     * Endpoint to list users, one keyset page at a time.
+     * Searching by username or email prefix sorts by that key.
+     *
+     * @param sort     the sort order, ID or CREATED_AT
+     * @param username the username prefix to search
+     * @param email    the email prefix to search
+     * @param cursor   the cursor returned with the previous page
+     * @param size     the number of users per page
+     * @return the page of users and the cursor of the next page
+     */
+    @GetMapping
+    public UserPage listUsers(@RequestParam(defaultValue = "ID") UserListingService.UserSort sort,
+                              @RequestParam(required = false) String username,
+                              @RequestParam(required = false) String email,
+                              @RequestParam(required = false) String cursor,
+                              @RequestParam(defaultValue = "50") int size) {
+        return userListingService.list(sort, username, email, cursor, size);
+    }
+
+    /**
+     * Endpoint to export every user as newline-delimited JSON, streamed while it is read.
+     * The export permit is released when the async request completes, even if the body was never written.
+     *
+     * @param request the web request
+     * @return the streamed export
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportUsers(WebRequest request) {
+        UserListingService.Export export = userListingService.export();
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(EXPORT_PERMIT_KEY,
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                        export.release();
+                    }
+                });
+        return ResponseEntity.ok().contentType(NDJSON).body(export);
+    }
+
+    /**
+     * Endpoint to import users in bulk from newline-delimited JSON.
+     * Each line holds one {"username", "email", "password"} object; invalid or duplicated rows are reported
+     * without stopping the import. A password is plain text, or "{bcrypt}" followed by its BCrypt hash.
+     *
+     * @param input the request body
+     * @return the import report
+     * @throws IOException if the request body cannot be read
+     */
+    @PostMapping(value = "/import", consumes = "application/x-ndjson")
+    public UserImportReport importNdjson(InputStream input) throws IOException {
+        return userImportService.importNdjson(input);
+    }
+
+    /**
+     * Endpoint to import users in bulk from CSV, with a header line naming the username, email and password columns.
+     * Invalid or duplicated rows are reported without stopping the import. A password is plain text,
+     * or "{bcrypt}" followed by its BCrypt hash.
+     *
+     * @param input the request body
+     * @return the import report
+     * @throws IOException if the request body cannot be read
+     */
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public UserImportReport importCsv(InputStream input) throws IOException {
+        return userImportService.importCsv(input);
+    }
+}
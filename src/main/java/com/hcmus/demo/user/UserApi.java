@@ -3,18 +3,21 @@ package com.hcmus.demo.user;
 import com.hcmus.demo.exception_handler.exception.ExistingEmailException;
 import com.hcmus.demo.exception_handler.exception.ExistingUsernameException;
 import com.hcmus.demo.model.User;
-import com.hcmus.demo.security.jwt.JwtValidationException;
-import jakarta.servlet.http.HttpServletRequest;
+import com.hcmus.demo.security.jwt.JwtPrincipal;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * REST controller for user-related operations.
- * This class provides endpoints for user registration, checking unique email and username, and finding a user by token.
+ * This class provides endpoints for user registration, checking unique email and username, and finding the authenticated user.
  */
 @RestController
 @RequestMapping("/user")
@@ -22,7 +25,10 @@ import org.springframework.web.bind.annotation.*;
 @Validated
 public class UserApi {
     private final UserService userService;
-    private final ModelMapper modelMapper;
+    private final UserMapper userMapper;
+
+    @Value("${app.user-filter.unique-max-age-seconds:30}")
+    private long uniqueMaxAgeSeconds;
 
     /**
      * Endpoint for user registration.
@@ -44,8 +50,8 @@ public class UserApi {
      * @return the response entity with the result
      */
     @GetMapping("/check-unique-email/{email}")
-    public boolean checkUniqueEmail(@PathVariable String email) {
-        return userService.checkUniqueEmail(email);
+    public ResponseEntity<Boolean> checkUniqueEmail(@PathVariable String email) {
+        return uniquenessResponse(userService.checkUniqueEmail(email));
     }
 
     /**
@@ -55,21 +61,42 @@ public class UserApi {
      * @return the response entity with the result
      */
     @GetMapping("/check-unique-username/{username}")
-    public boolean checkUniqueUsername(@PathVariable String username) {
-        return userService.checkUniqueUsername(username);
+    public ResponseEntity<Boolean> checkUniqueUsername(@PathVariable String username) {
+        return uniquenessResponse(userService.checkUniqueUsername(username));
+    }
+
+    /**
+     * Builds the response of a uniqueness check.
+     * A key that is not taken lets the browser reuse the answer for a short time, since signup forms
+     * check on every keystroke; a taken key is not cached, as it may be freed or belong to the user.
+     *
+     * @param unique whether the key is unique
+     * @return the response entity with the result
+     */
+    private ResponseEntity<Boolean> uniquenessResponse(boolean unique) {
+        if (!unique) {
+            return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(false);
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(uniqueMaxAgeSeconds, TimeUnit.SECONDS).cachePrivate())
+                .body(true);
     }
 
     /**
-     * Endpoint to find a user by token.
+     * Endpoint to find the authenticated user.
+     * The response carries an ETag derived from the user version: a request whose If-None-Match matches it
+     * gets a 304 without body. Clients must revalidate before reusing a stored profile.
      *
+     * @param principal the principal of the access token verified by the JWT filter
      * @return the response entity with the user
-     * @throws JwtValidationException if the token is invalid
      */
     @GetMapping("/profile")
-    public UserResponseDTO findUserByToken(HttpServletRequest request) throws JwtValidationException, ExistingUsernameException, ExistingEmailException {
-        String token = getBearerToken(request);
-        User user = userService.getUserByToken(token);
-        return entityToDto(user);
+    public ResponseEntity<UserResponseDTO> findAuthenticatedUser(@AuthenticationPrincipal JwtPrincipal principal) {
+        User user = userService.getAuthenticatedUser(principal);
+        return ResponseEntity.ok()
+                .eTag(user.getId() + "-" + user.getVersion())
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(entityToDto(user));
     }
 
     /**
@@ -79,7 +106,7 @@ public class UserApi {
      * @return the user entity
      */
     public User dtoToEntity(UserRequestDTO userDto) {
-        return modelMapper.map(userDto, User.class);
+        return userMapper.toEntity(userDto);
     }
 
     /**
@@ -89,21 +116,7 @@ public class UserApi {
      * @return the user data transfer object
      */
     public UserResponseDTO entityToDto(User user) {
-        return modelMapper.map(user, UserResponseDTO.class);
-    }
-
-    /**
-     * Extracts the Bearer token from the Authorization header.
-     *
-     * @param request the HTTP request
-     * @return the Bearer token, or null if not present
-     */
-    private String getBearerToken(HttpServletRequest request) {
-        String header = request.getHeader("Authorization");
-
-        String[] array = header.split(" ");
-        if (array.length == 2) return array[1];
-        return null;
+        return userMapper.toResponse(user);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,199 @@
+package com.hcmus.demo.user;
+
+import com.hcmus.demo.util.BloomFilter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Bloom filters of the usernames and emails in use, answering "definitely not taken" without the database.
+ * The filters are built from the user table at startup, updated when a user is saved on this node,
+ * and rebuilt periodically to pick up users created on other nodes and to resize for growth.
+ * Until they are built, every check is a possible hit. Keys are compared case- and accent-insensitively,
+ * like the database collation, so the filter never answers "not taken" for a key the database would match.
+ */
+@Component
+public class UserExistenceFilter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserExistenceFilter.class);
+
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Object rebuildLock = new Object();
+    private final AtomicLong checks = new AtomicLong(); // Checks answered by the filters
+    private final AtomicLong possibleHits = new AtomicLong(); // Checks the filters could not rule out
+    private final AtomicLong falsePositives = new AtomicLong(); // Possible hits not found in the database
+
+    @Value("${app.user-filter.expected-users:100000}")
+    private long expectedUsers;
+
+    @Value("${app.user-filter.fpp:0.01}")
+    private double fpp;
+
+    private volatile Filters filters; // Null until the first build
+    private List<UserKeys> addedDuringRebuild; // Users saved while a rebuild reads the table, guarded by rebuildLock
+
+    public UserExistenceFilter(UserRepository userRepository, PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+
+        Gauge.builder("user.filter.memory", this, f -> f.filters == null ? 0
+                        : f.filters.usernames.memoryBytes() + f.filters.emails.memoryBytes())
+                .baseUnit("bytes")
+                .description("Memory used by the username and email filters")
+                .register(meterRegistry);
+        Gauge.builder("user.filter.expected.fpp", this, f -> f.filters == null ? 0
+                        : Math.max(f.filters.usernames.expectedFpp(), f.filters.emails.expectedFpp()))
+                .description("Expected false positive probability of the filters")
+                .register(meterRegistry);
+        Gauge.builder("user.filter.observed.fpp", this, UserExistenceFilter::observedFpp)
+                .description("Share of keys not in use that the filters could not rule out")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Builds the filters once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        rebuild();
+    }
+
+    /**
+     * Rebuilds the filters from the user table, sized for the current number of users.
+     * Users saved while the table is read are added to the new filters before they replace the old ones.
+     */
+    @Scheduled(fixedDelayString = "${app.user-filter.rebuild-interval-ms:600000}",
+            initialDelayString = "${app.user-filter.rebuild-interval-ms:600000}")
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            addedDuringRebuild = new ArrayList<>();
+        }
+
+        long start = System.nanoTime();
+        Filters rebuilt;
+        try {
+            long size = Math.max(expectedUsers, userRepository.count() * 2);
+            rebuilt = new Filters(new BloomFilter(size, fpp), new BloomFilter(size, fpp));
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<UserKeys> keys = userRepository.streamAllKeys()) {
+                    keys.forEach(rebuilt::add);
+                }
+            });
+        } catch (RuntimeException ex) {
+            synchronized (rebuildLock) {
+                addedDuringRebuild = null;
+            }
+            LOGGER.error("Could not rebuild the user filters", ex);
+            return;
+        }
+
+        synchronized (rebuildLock) {
+            addedDuringRebuild.forEach(rebuilt::add);
+            addedDuringRebuild = null;
+            filters = rebuilt;
+        }
+        LOGGER.info("Rebuilt the user filters in {} ms, {} bytes", (System.nanoTime() - start) / 1_000_000,
+                rebuilt.usernames.memoryBytes() + rebuilt.emails.memoryBytes());
+    }
+
+    /**
+     * Adds a saved user to the filters.
+     *
+     * @param username the username of the user
+     * @param email    the email of the user
+     */
+    public void add(String username, String email) {
+        UserKeys keys = new UserKeys(username, email);
+        synchronized (rebuildLock) {
+            Filters current = filters;
+            if (current != null) {
+                current.add(keys);
+            }
+            if (addedDuringRebuild != null) {
+                addedDuringRebuild.add(keys);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the username may be in use.
+     *
+     * @param username the username to check
+     * @return false if the username is definitely not in use
+     */
+    public boolean mightContainUsername(String username) {
+        Filters current = filters;
+        return check(current == null || current.usernames.mightContain(normalize(username)));
+    }
+
+    /**
+     * Checks whether the email may be in use.
+     *
+     * @param email the email to check
+     * @return false if the email is definitely not in use
+     */
+    public boolean mightContainEmail(String email) {
+        Filters current = filters;
+        return check(current == null || current.emails.mightContain(normalize(email)));
+    }
+
+    /**
+     * Records the database answer for a possible hit, to measure the false positive rate.
+     *
+     * @param exists whether the database found the key
+     */
+    public void recordPossibleHit(boolean exists) {
+        if (!exists) {
+            falsePositives.incrementAndGet();
+        }
+    }
+
+    private boolean check(boolean possibleHit) {
+        checks.incrementAndGet();
+        if (possibleHit) {
+            possibleHits.incrementAndGet();
+        }
+        return possibleHit;
+    }
+
+    /**
+     * False positives divided by the checks of keys not in use, i.e. every check but the true hits.
+     */
+    private double observedFpp() {
+        long falsePositiveCount = falsePositives.get();
+        long negatives = checks.get() - (possibleHits.get() - falsePositiveCount);
+        return negatives <= 0 ? 0 : (double) falsePositiveCount / negatives;
+    }
+
+    /**
+     * Lower-cases the key and strips its accents, so that keys equal for the database collation are equal here.
+     */
+    private static String normalize(String key) {
+        String decomposed = Normalizer.normalize(key, Normalizer.Form.NFKD);
+        return decomposed.replaceAll("\\p{M}", "").toLowerCase(Locale.ROOT);
+    }
+
+    private record Filters(BloomFilter usernames, BloomFilter emails) {
+        void add(UserKeys keys) {
+            usernames.put(normalize(keys.username()));
+            emails.put(normalize(keys.email()));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.hcmus.demo.user;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of a bulk user import.
+ * Only the first errors are listed, so the report stays small whatever the size of the file.
+ */
+@Getter
+public class UserImportReport {
+    private long processed; // Rows read from the file
+    private long imported; // Users inserted
+    private long failed; // Rows rejected
+    private final List<RowError> errors = new ArrayList<>(); // The first rejected rows and their reason
+    private boolean errorsTruncated; // Whether more rows were rejected than listed
+
+    @Getter(AccessLevel.NONE)
+    private final int maxErrors; // Maximum number of listed errors
+
+    public UserImportReport(int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * Counts a row read from the file.
+     */
+    void addProcessed() {
+        processed++;
+    }
+
+    /**
+     * Counts the users inserted by a batch.
+     *
+     * @param count the number of inserted users
+     */
+    void addImported(int count) {
+        imported += count;
+    }
+
+    /**
+     * Records a rejected row.
+     *
+     * @param line    the line of the row in the file
+     * @param message the reason of the rejection
+     */
+    void addError(long line, String message) {
+        failed++;
+        if (errors.size() < maxErrors) {
+            errors.add(new RowError(line, message));
+        } else {
+            errorsTruncated = true;
+        }
+    }
+
+    /**
+     * A rejected row.
+     *
+     * @param line    the line of the row in the file, starting at 1
+     * @param message the reason of the rejection
+     */
+    public record RowError(long line, String message) {
+    }
+}
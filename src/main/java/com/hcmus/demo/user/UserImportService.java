@@ -0,0 +1,416 @@
+package com.hcmus.demo.user;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hcmus.demo.config.DaemonThreadFactory;
+import com.hcmus.demo.model.User;
+import com.hcmus.demo.security.password.BulkheadPasswordEncoder;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.exception.spi.ViolatedConstraintNameExtractor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+
+/**
+ * Service class for importing users in bulk from NDJSON or CSV.
+ * The file is read as a stream, one chunk of rows at a time, so memory does not grow with the file size.
+ * For each chunk, passwords are hashed in parallel on a dedicated bounded pool, rows whose username or email
+ * is already taken are rejected up front, and the remaining users are written with one JDBC batch insert.
+ * If the batch is rejected, e.g. a user registered meanwhile, the chunk is inserted row by row
+ * so that only the rejected rows fail, reported by the unique key they violate or else as invalid.
+ * Hashing bounds the throughput of plain-text passwords: a BCrypt hash at the default strength costs 50 to 100 ms
+ * of CPU, so each hashing thread imports 10 to 20 rows per second. Passwords given as "{bcrypt}" hashes, e.g. exported
+ * from another system, are stored as they are; such files import at the speed of the batch inserts.
+ */
+@Service
+public class UserImportService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserImportService.class);
+
+    private static final String INSERT = "INSERT INTO user (username, email, password, created_at, version) VALUES (?, ?, ?, ?, 0)";
+    private static final String SELECT_TAKEN = "SELECT username, email FROM user "
+            + "WHERE username IN (:usernames) OR email IN (:emails)";
+    private static final List<String> CSV_COLUMNS = List.of("username", "email", "password");
+    private static final String USERNAME_TAKEN_MSG = "Username already exists";
+    private static final String EMAIL_TAKEN_MSG = "Email already exists";
+    private static final String ROW_REJECTED_MSG = "Invalid row, rejected by the database";
+    private static final String BCRYPT_PREFIX = "{bcrypt}";
+    private static final Pattern BCRYPT_HASH = Pattern.compile("\\$2[aby]?\\$\\d{2}\\$[./0-9A-Za-z]{53}");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PasswordEncoder hashingEncoder;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final UserExistenceFilter userExistenceFilter;
+    private final ThreadPoolExecutor hashingPool;
+    private final ViolatedConstraintNameExtractor constraintNameExtractor; // Reads the constraint of a rejected insert
+
+    @Value("${app.user-import.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${app.user-import.max-errors:1000}")
+    private int maxErrors;
+
+    public UserImportService(DataSource dataSource, PlatformTransactionManager transactionManager,
+                             PasswordEncoder passwordEncoder, ObjectMapper objectMapper, Validator validator,
+                             UserExistenceFilter userExistenceFilter, EntityManagerFactory entityManagerFactory,
+                             @Value("${app.user-import.hashing-threads:2}") int hashingThreads,
+                             @Value("${app.user-import.hashing-queue-capacity:1000}") int hashingQueueCapacity) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // The import has its own bounded pool: it must not take the places of logins in the hashing bulkhead
+        this.hashingEncoder = passwordEncoder instanceof BulkheadPasswordEncoder bulkhead ? bulkhead.getDelegate()
+                : passwordEncoder;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.userExistenceFilter = userExistenceFilter;
+        this.constraintNameExtractor = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect().getViolatedConstraintNameExtractor();
+
+        // When the queue is full, e.g. several imports at once, the importing thread hashes the password itself
+        this.hashingPool = new ThreadPoolExecutor(hashingThreads, hashingThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(hashingQueueCapacity), new DaemonThreadFactory("user-import-hashing"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Stops the hashing threads.
+     */
+    @PreDestroy
+    void shutdown() {
+        hashingPool.shutdownNow();
+    }
+
+    /**
+     * Imports users from newline-delimited JSON, one {"username", "email", "password"} object per line.
+     *
+     * @param input the NDJSON stream
+     * @return the import report
+     * @throws IOException if the stream cannot be read
+     */
+    public UserImportReport importNdjson(InputStream input) throws IOException {
+        return importRows(input, false);
+    }
+
+    /**
+     * Imports users from CSV with a header line naming the username, email and password columns.
+     *
+     * @param input the CSV stream
+     * @return the import report
+     * @throws IOException if the stream cannot be read
+     */
+    public UserImportReport importCsv(InputStream input) throws IOException {
+        return importRows(input, true);
+    }
+
+    private UserImportReport importRows(InputStream input, boolean csv) throws IOException {
+        UserImportReport report = new UserImportReport(maxErrors);
+        long start = System.nanoTime();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            int[] columns = null;
+            List<ImportRow> chunk = new ArrayList<>(chunkSize);
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (csv && columns == null) {
+                    columns = csvColumns(line);
+                    if (columns == null) {
+                        report.addError(lineNumber, "The header must name the columns " + CSV_COLUMNS);
+                        return report;
+                    }
+                    continue;
+                }
+
+                report.addProcessed();
+                ImportRow row = csv ? parseCsv(lineNumber, line, columns, report) : parseJson(lineNumber, line, report);
+                if (row != null) {
+                    chunk.add(row);
+                }
+                if (chunk.size() >= chunkSize) {
+                    importChunk(chunk, report);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                importChunk(chunk, report);
+            }
+        }
+        LOGGER.info("Imported {} of {} users in {} ms", report.getImported(), report.getProcessed(),
+                (System.nanoTime() - start) / 1_000_000);
+        return report;
+    }
+
+    /**
+     * Rejects the duplicated rows of the chunk, hashes the passwords of the others and inserts them.
+     *
+     * @param chunk  the valid rows of the chunk
+     * @param report the import report
+     */
+    private void importChunk(List<ImportRow> chunk, UserImportReport report) {
+        List<ImportRow> rows = rejectDuplicates(chunk, report);
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        List<String> hashes = hashPasswords(rows);
+        Timestamp createdAt = new Timestamp(System.currentTimeMillis());
+        List<Object[]> batch = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            ImportRow row = rows.get(i);
+            batch.add(new Object[]{row.username(), row.email(), hashes.get(i), createdAt});
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT, batch));
+            rows.forEach(row -> userExistenceFilter.add(row.username(), row.email()));
+            report.addImported(rows.size());
+        } catch (DataIntegrityViolationException ex) {
+            // Someone took a username or email since the check, or a row is invalid: find the rows one by one
+            for (int i = 0; i < rows.size(); i++) {
+                ImportRow row = rows.get(i);
+                try {
+                    jdbcTemplate.update(INSERT, batch.get(i));
+                    userExistenceFilter.add(row.username(), row.email());
+                    report.addImported(1);
+                } catch (DataIntegrityViolationException rowEx) {
+                    report.addError(row.line(), rejectionMessage(rowEx));
+                }
+            }
+        }
+    }
+
+    /**
+     * Describes why the database rejected a row, from the constraint it violated.
+     *
+     * @param ex the exception of the insert
+     * @return the error of the row
+     */
+    private String rejectionMessage(DataIntegrityViolationException ex) {
+        String constraint = ex.getCause() instanceof SQLException sqlException
+                ? constraintNameExtractor.extractConstraintName(sqlException) : null;
+        String key = UserService.uniqueKeyOf(constraint);
+        if (User.UK_USERNAME.equals(key)) {
+            return USERNAME_TAKEN_MSG;
+        }
+        if (User.UK_EMAIL.equals(key)) {
+            return EMAIL_TAKEN_MSG;
+        }
+        return ROW_REJECTED_MSG;
+    }
+
+    /**
+     * Rejects the rows repeating a username or email of an earlier row of the chunk, or of an existing user.
+     *
+     * @param chunk  the valid rows of the chunk
+     * @param report the import report
+     * @return the rows to insert
+     */
+    private List<ImportRow> rejectDuplicates(List<ImportRow> chunk, UserImportReport report) {
+        Set<String> takenUsernames = new HashSet<>();
+        Set<String> takenEmails = new HashSet<>();
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("usernames", chunk.stream().map(ImportRow::username).toList())
+                .addValue("emails", chunk.stream().map(ImportRow::email).toList());
+        namedJdbcTemplate.query(SELECT_TAKEN, params, rs -> {
+            takenUsernames.add(rs.getString("username").toLowerCase(Locale.ROOT));
+            takenEmails.add(rs.getString("email").toLowerCase(Locale.ROOT));
+        });
+
+        List<ImportRow> rows = new ArrayList<>(chunk.size());
+        for (ImportRow row : chunk) {
+            String username = row.username().toLowerCase(Locale.ROOT);
+            String email = row.email().toLowerCase(Locale.ROOT);
+            if (takenUsernames.contains(username)) {
+                report.addError(row.line(), USERNAME_TAKEN_MSG);
+            } else if (takenEmails.contains(email)) {
+                report.addError(row.line(), EMAIL_TAKEN_MSG);
+            } else {
+                takenUsernames.add(username);
+                takenEmails.add(email);
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Hashes the passwords of the rows in parallel on the import hashing pool.
+     * Passwords given as BCrypt hashes are kept as they are.
+     *
+     * @param rows the rows
+     * @return the hashes, in the order of the rows
+     */
+    private List<String> hashPasswords(List<ImportRow> rows) {
+        List<Future<String>> futures = new ArrayList<>(rows.size());
+        for (ImportRow row : rows) {
+            String hash = preHashed(row.password());
+            futures.add(hash != null ? CompletableFuture.completedFuture(hash)
+                    : hashingPool.submit(() -> hashingEncoder.encode(row.password())));
+        }
+
+        List<String> hashes = new ArrayList<>(rows.size());
+        try {
+            for (Future<String> future : futures) {
+                hashes.add(future.get());
+            }
+        } catch (InterruptedException ex) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing imported passwords", ex);
+        } catch (ExecutionException ex) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Could not hash an imported password", ex.getCause());
+        }
+        return hashes;
+    }
+
+    /**
+     * Reads a password given as "{bcrypt}" followed by a BCrypt hash.
+     *
+     * @param password the password of the row
+     * @return the BCrypt hash, stored without prefix like the hashes of the password encoder,
+     * or null if the password is plain text
+     */
+    private static String preHashed(String password) {
+        if (!password.startsWith(BCRYPT_PREFIX)) {
+            return null;
+        }
+        String hash = password.substring(BCRYPT_PREFIX.length());
+        return BCRYPT_HASH.matcher(hash).matches() ? hash : null;
+    }
+
+    private ImportRow parseJson(long lineNumber, String line, UserImportReport report) {
+        try {
+            return validate(lineNumber, objectMapper.readValue(line, UserRequestDTO.class), report);
+        } catch (JsonProcessingException ex) {
+            report.addError(lineNumber, "Invalid JSON: " + ex.getOriginalMessage());
+            return null;
+        }
+    }
+
+    private ImportRow parseCsv(long lineNumber, String line, int[] columns, UserImportReport report) {
+        List<String> fields = splitCsv(line);
+        if (fields == null) {
+            report.addError(lineNumber, "Invalid CSV: unterminated quote");
+            return null;
+        }
+        String[] values = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = columns[i] < fields.size() ? fields.get(columns[i]) : null;
+        }
+        return validate(lineNumber, new UserRequestDTO(values[0], values[1], values[2]), report);
+    }
+
+    private ImportRow validate(long lineNumber, UserRequestDTO user, UserImportReport report) {
+        Set<ConstraintViolation<UserRequestDTO>> violations = validator.validate(user);
+        if (!violations.isEmpty()) {
+            report.addError(lineNumber, violations.iterator().next().getMessage());
+            return null;
+        }
+        return new ImportRow(lineNumber, user.getUsername(), user.getEmail(), user.getPassword());
+    }
+
+    /**
+     * Finds the position of the username, email and password columns in the CSV header.
+     *
+     * @param header the header line
+     * @return the positions, or null if a column is missing
+     */
+    private static int[] csvColumns(String header) {
+        List<String> names = splitCsv(header);
+        if (names == null) {
+            return null;
+        }
+        int[] columns = new int[CSV_COLUMNS.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = -1;
+            for (int j = 0; j < names.size(); j++) {
+                if (names.get(j).trim().equalsIgnoreCase(CSV_COLUMNS.get(i))) {
+                    columns[i] = j;
+                }
+            }
+            if (columns[i] < 0) {
+                return null;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Splits a CSV line into fields. Fields may be quoted with double quotes, a quote inside being doubled.
+     *
+     * @param line the line
+     * @return the fields, or null if a quote is not closed
+     */
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * A valid row of the file.
+     *
+     * @param line     the line of the row in the file
+     * @param username the username
+     * @param email    the email
+     * @param password the raw password, or "{bcrypt}" followed by its BCrypt hash
+     */
+    private record ImportRow(long line, String username, String email, String password) {
+    }
+}
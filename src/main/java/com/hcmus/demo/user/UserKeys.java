@@ -0,0 +1,10 @@
+package com.hcmus.demo.user;
+
+/**
+ * Unique keys of a user, read without loading the user entity.
+ *
+ * @param username the username of the user
+ * @param email    the email of the user
+ */
+public record UserKeys(String username, String email) {
+}
@@ -0,0 +1,245 @@
+package com.hcmus.demo.user;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Service class for the admin user listing.
+ * Pages are read with keyset pagination: each page continues after the sort key of the last user of the previous
+ * page, carried by an opaque cursor, so every page is an index range scan whatever its depth.
+ * Listings sort by id, by creation date (index on created_at, id), or by username or email when searching
+ * by their prefix (unique indexes on username and email).
+ * The export streams every user through a server-side cursor (useCursorFetch on the connection pool), so it does not
+ * materialize the table in the heap. It holds a pooled connection while it runs, so the exports running at once must
+ * stay below the pool size, leaving connections to the application.
+ */
+@Service
+public class UserListingService {
+    private static final String COLUMNS = "SELECT id, username, email, profile, created_at FROM user ";
+    private static final String BY_ID = COLUMNS + "WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String BY_CREATED_AT = COLUMNS
+            + "WHERE created_at > ? OR (created_at = ? AND id > ?) ORDER BY created_at, id LIMIT ?";
+    private static final String BY_USERNAME = COLUMNS
+            + "WHERE username LIKE ? ESCAPE '!' AND username > ? ORDER BY username LIMIT ?";
+    private static final String BY_EMAIL = COLUMNS
+            + "WHERE email LIKE ? ESCAPE '!' AND email > ? ORDER BY email LIMIT ?";
+    private static final String EXPORT = COLUMNS + "ORDER BY id";
+    private static final char CURSOR_SEPARATOR = '\n';
+    private static final String INVALID_CURSOR_MSG = "Invalid cursor";
+    private static final RowMapper<UserSummary> SUMMARY_MAPPER = (rs, rowNum) -> new UserSummary(
+            rs.getLong("id"),
+            rs.getString("username"),
+            rs.getString("email"),
+            rs.getString("profile"),
+            new Date(rs.getTimestamp("created_at").getTime()));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate exportJdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final Semaphore exportPermits; // Exports running at once, each holding one database connection
+
+    @Value("${app.user-listing.max-page-size:200}")
+    private int maxPageSize;
+
+    public UserListingService(DataSource dataSource, ObjectMapper objectMapper,
+                              @Value("${app.user-listing.export-fetch-size:1000}") int exportFetchSize,
+                              @Value("${app.user-listing.max-concurrent-exports:1}") int maxConcurrentExports,
+                              @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize) {
+        if (maxConcurrentExports >= poolSize) {
+            throw new IllegalStateException("app.user-listing.max-concurrent-exports must be lower than the pool size ("
+                    + poolSize + "), so that running exports leave connections to the application");
+        }
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.exportJdbcTemplate = new JdbcTemplate(dataSource);
+        this.exportJdbcTemplate.setFetchSize(exportFetchSize);
+        this.objectMapper = objectMapper;
+        this.exportPermits = new Semaphore(maxConcurrentExports);
+    }
+
+    /**
+     * Sort orders of the listing.
+     */
+    public enum UserSort {
+        ID, CREATED_AT, USERNAME, EMAIL
+    }
+
+    /**
+     * Reads one page of users.
+     *
+     * @param sort           the sort order, ignored when searching by prefix
+     * @param usernamePrefix the username prefix to search, sorted by username, or null
+     * @param emailPrefix    the email prefix to search, sorted by email, or null
+     * @param cursor         the cursor returned with the previous page, or null for the first page
+     * @param size           the number of users of the page
+     * @return the page and the cursor of the next one
+     * @throws ResponseStatusException 400 if both prefixes are given or the cursor is not one of this listing
+     */
+    public UserPage list(UserSort sort, String usernamePrefix, String emailPrefix, String cursor, int size) {
+        if (usernamePrefix != null && emailPrefix != null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Search by username or by email, not both");
+        }
+        if (usernamePrefix != null) {
+            sort = UserSort.USERNAME;
+        } else if (emailPrefix != null) {
+            sort = UserSort.EMAIL;
+        } else if (sort == UserSort.USERNAME || sort == UserSort.EMAIL) {
+            usernamePrefix = "";
+            emailPrefix = "";
+        }
+
+        int limit = Math.max(1, Math.min(size, maxPageSize));
+        String[] position = decodeCursor(sort, cursor);
+        // One more row than the page tells whether there is a next page
+        List<UserSummary> rows = switch (sort) {
+            case ID -> jdbcTemplate.query(BY_ID, SUMMARY_MAPPER,
+                    position == null ? 0L : parseLong(position[0]), limit + 1);
+            case CREATED_AT -> {
+                Timestamp after = new Timestamp(position == null ? 0L : parseLong(position[0]));
+                yield jdbcTemplate.query(BY_CREATED_AT, SUMMARY_MAPPER,
+                        after, after, position == null ? 0L : parseLong(position[1]), limit + 1);
+            }
+            case USERNAME -> jdbcTemplate.query(BY_USERNAME, SUMMARY_MAPPER,
+                    likePrefix(usernamePrefix), position == null ? "" : position[0], limit + 1);
+            case EMAIL -> jdbcTemplate.query(BY_EMAIL, SUMMARY_MAPPER,
+                    likePrefix(emailPrefix), position == null ? "" : position[0], limit + 1);
+        };
+
+        if (rows.size() <= limit) {
+            return new UserPage(rows, null);
+        }
+        List<UserSummary> items = new ArrayList<>(rows.subList(0, limit));
+        return new UserPage(items, encodeCursor(sort, items.get(limit - 1)));
+    }
+
+    /**
+     * Prepares the export of every user as newline-delimited JSON, in id order,
+     * written while the users are read from the database.
+     * The export holds an export permit until it is released: by the end of the body, or by the caller
+     * when the body is never written, e.g. the request timed out or the client went away before it started.
+     *
+     * @return the response body writing the export
+     * @throws ResponseStatusException 503 if the maximum number of exports are already running
+     */
+    public Export export() {
+        if (!exportPermits.tryAcquire()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "An export is already running");
+        }
+        return new Export(output -> {
+            try (SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(output)) {
+                exportJdbcTemplate.query(EXPORT, rs -> {
+                    try {
+                        writer.write(SUMMARY_MAPPER.mapRow(rs, 0));
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+                writer.flush();
+                output.write('\n');
+            }
+        }, exportPermits::release);
+    }
+
+    /**
+     * Builds the LIKE pattern matching the values starting with the prefix, escaping the LIKE wildcards.
+     */
+    private static String likePrefix(String prefix) {
+        return prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+    }
+
+    private static String encodeCursor(UserSort sort, UserSummary last) {
+        String position = switch (sort) {
+            case ID -> String.valueOf(last.id());
+            case CREATED_AT -> last.createdAt().getTime() + String.valueOf(CURSOR_SEPARATOR) + last.id();
+            case USERNAME -> last.username();
+            case EMAIL -> last.email();
+        };
+        String raw = sort.name() + CURSOR_SEPARATOR + position;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor into the sort key of the last user of the previous page.
+     *
+     * @return the sort key parts, or null for the first page
+     * @throws ResponseStatusException 400 if the cursor is malformed or belongs to another sort order
+     */
+    private static String[] decodeCursor(UserSort sort, String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, INVALID_CURSOR_MSG);
+        }
+        int expected = sort == UserSort.CREATED_AT ? 3 : 2;
+        String[] parts = raw.split(String.valueOf(CURSOR_SEPARATOR), expected);
+        if (parts.length != expected || !parts[0].equals(sort.name())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, INVALID_CURSOR_MSG);
+        }
+        String[] position = new String[expected - 1];
+        System.arraycopy(parts, 1, position, 0, position.length);
+        return position;
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, INVALID_CURSOR_MSG);
+        }
+    }
+
+    /**
+     * Body of a running export, releasing its export permit once, when written or when released by the caller.
+     */
+    public static final class Export implements StreamingResponseBody {
+        private final StreamingResponseBody writer;
+        private final Runnable releasePermit;
+        private final AtomicBoolean released = new AtomicBoolean(); // Whether the permit was released
+
+        public Export(StreamingResponseBody writer, Runnable releasePermit) {
+            this.writer = writer;
+            this.releasePermit = releasePermit;
+        }
+
+        @Override
+        public void writeTo(OutputStream output) throws IOException {
+            try {
+                writer.writeTo(output);
+            } finally {
+                release();
+            }
+        }
+
+        /**
+         * Releases the export permit, if not released yet.
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                releasePermit.run();
+            }
+        }
+    }
+}
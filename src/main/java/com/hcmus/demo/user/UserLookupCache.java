@@ -0,0 +1,182 @@
+package com.hcmus.demo.user;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hcmus.demo.model.User;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * In-process cache of users by id, with username and email indexes pointing to the id.
+ * Entries are bounded in number and expire after a fixed time, so a change made by another node
+ * is seen at most one TTL later. Only found users are cached: a miss always reads the database.
+ * Users are copied in and out of the cache, so a caller modifying its user never changes the cached one.
+ */
+@Component
+public class UserLookupCache {
+    private final UserRepository userRepository;
+    private final Cache<Long, User> usersById; // Users by id
+    private final Cache<String, Long> idsByUsername; // User ids by username
+    private final Cache<String, Long> idsByEmail; // User ids by email
+
+    public UserLookupCache(UserRepository userRepository, MeterRegistry meterRegistry,
+                           @Value("${app.user-cache.max-size:10000}") long maxSize,
+                           @Value("${app.user-cache.ttl:5m}") Duration ttl) {
+        this.userRepository = userRepository;
+        this.usersById = newCache(maxSize, ttl);
+        this.idsByUsername = newCache(maxSize, ttl);
+        this.idsByEmail = newCache(maxSize, ttl);
+        monitor(meterRegistry, usersById, "users.by-id");
+        monitor(meterRegistry, idsByUsername, "users.by-username");
+        monitor(meterRegistry, idsByEmail, "users.by-email");
+    }
+
+    /**
+     * Finds a user by id.
+     *
+     * @param id the id of the user
+     * @return a copy of the user, or null if no user found
+     */
+    public User findById(Long id) {
+        User cached = usersById.getIfPresent(id);
+        if (cached != null) {
+            return copy(cached);
+        }
+        return load(userRepository.findById(id).orElse(null));
+    }
+
+    /**
+     * Finds a user by username.
+     *
+     * @param username the username of the user
+     * @return a copy of the user, or null if no user found
+     */
+    public User findByUsername(String username) {
+        User cached = getIfPresentByUsername(username);
+        if (cached != null) {
+            return cached;
+        }
+        return load(userRepository.findByUsername(username));
+    }
+
+    /**
+     * Finds a user by email.
+     *
+     * @param email the email of the user
+     * @return a copy of the user, or null if no user found
+     */
+    public User findByEmail(String email) {
+        Long id = idsByEmail.getIfPresent(email);
+        if (id != null) {
+            User cached = usersById.getIfPresent(id);
+            if (cached != null && email.equals(cached.getEmail())) {
+                return copy(cached);
+            }
+        }
+        return load(userRepository.findByEmail(email));
+    }
+
+    /**
+     * Returns the cached user with the given username without reading the database.
+     *
+     * @param username the username of the user
+     * @return a copy of the user, or null if the user is not cached
+     */
+    public User getIfPresentByUsername(String username) {
+        Long id = idsByUsername.getIfPresent(username);
+        if (id == null) {
+            return null;
+        }
+        User cached = usersById.getIfPresent(id);
+        return cached != null && username.equals(cached.getUsername()) ? copy(cached) : null;
+    }
+
+    /**
+     * Stores a copy of the user, replacing the entries of its previous username and email.
+     *
+     * @param user the saved user
+     */
+    public void put(User user) {
+        User previous = usersById.getIfPresent(user.getId());
+        if (previous != null) {
+            idsByUsername.invalidate(previous.getUsername());
+            idsByEmail.invalidate(previous.getEmail());
+        }
+        usersById.put(user.getId(), copy(user));
+        idsByUsername.put(user.getUsername(), user.getId());
+        idsByEmail.put(user.getEmail(), user.getId());
+    }
+
+    /**
+     * Removes the user with the given username from the cache.
+     *
+     * @param username the username of the user
+     */
+    public void evictByUsername(String username) {
+        Long id = idsByUsername.getIfPresent(username);
+        idsByUsername.invalidate(username);
+        if (id != null) {
+            User previous = usersById.getIfPresent(id);
+            usersById.invalidate(id);
+            if (previous != null) {
+                idsByEmail.invalidate(previous.getEmail());
+            }
+        }
+    }
+
+    /**
+     * Removes the user with the given id from the cache.
+     *
+     * @param id the id of the user
+     */
+    public void evictById(Long id) {
+        User previous = usersById.getIfPresent(id);
+        usersById.invalidate(id);
+        if (previous != null) {
+            idsByUsername.invalidate(previous.getUsername());
+            idsByEmail.invalidate(previous.getEmail());
+        }
+    }
+
+    private User load(User user) {
+        if (user == null) {
+            return null;
+        }
+        put(user);
+        return copy(user);
+    }
+
+    private static User copy(User user) {
+        return User.builder()
+                .id(user.getId())
+                .username(user.getUsername())
+                .email(user.getEmail())
+                .password(user.getPassword())
+                .profile(user.getProfile())
+                .createdAt(user.getCreatedAt())
+                .role(user.getRole())
+                .version(user.getVersion())
+                .build();
+    }
+
+    private static <K, V> Cache<K, V> newCache(long maxSize, Duration ttl) {
+        return Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    private static void monitor(MeterRegistry meterRegistry, Cache<?, ?> cache, String name) {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+        Gauge.builder("cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .tag("cache", name)
+                .description("Share of lookups answered from the cache")
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,42 @@
+package com.hcmus.demo.user;
+
+import com.hcmus.demo.model.User;
+import org.springframework.stereotype.Component;
+
+/**
+ * Maps users between the entity and its data transfer objects.
+ * Fields are copied by plain getter and setter calls, so a mapping allocates only the target object,
+ * where ModelMapper matches properties by reflection on every call.
+ */
+@Component
+public class UserMapper {
+
+    /**
+     * Converts a registration request to a new User entity.
+     *
+     * @param userDto the user data transfer object
+     * @return the user entity, without id nor creation date
+     */
+    public User toEntity(UserRequestDTO userDto) {
+        User user = new User();
+        user.setUsername(userDto.getUsername());
+        user.setEmail(userDto.getEmail());
+        user.setPassword(userDto.getPassword());
+        return user;
+    }
+
+    /**
+     * Converts a User entity to its response.
+     *
+     * @param user the user entity
+     * @return the user data transfer object
+     */
+    public UserResponseDTO toResponse(User user) {
+        UserResponseDTO userDto = new UserResponseDTO();
+        userDto.setId(user.getId());
+        userDto.setUsername(user.getUsername());
+        userDto.setEmail(user.getEmail());
+        userDto.setProfile(user.getProfile());
+        return userDto;
+    }
+}
@@ -0,0 +1,12 @@
+package com.hcmus.demo.user;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated user listing.
+ *
+ * @param items      the users of the page
+ * @param nextCursor the opaque cursor of the next page, or null if this is the last page
+ */
+public record UserPage(List<UserSummary> items, String nextCursor) {
+}
@@ -1,8 +1,17 @@
 package com.hcmus.demo.user;
 
 import com.hcmus.demo.model.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.stream.Stream;
 
 /**
  * Repository interface for User entity.
@@ -26,4 +35,60 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @return the user with the given email, or null if no user found
      */
     User findByEmail(String email);
+
+    /**
+     * Checks whether a user has the given username, without loading the user.
+     *
+     * @param username the username to check
+     * @return true if a user has this username
+     */
+    boolean existsByUsername(String username);
+
+    /**
+     * Checks whether a user has the given email, without loading the user.
+     *
+     * @param email the email to check
+     * @return true if a user has this email
+     */
+    boolean existsByEmail(String email);
+
+    /**
+     * Sets the profile image of a user, unless the profile was changed since the image was requested.
+     *
+     * @param id        the id of the user
+     * @param sourceUrl the profile the user had when the image was requested
+     * @param profile   the new profile image URL
+     * @return the number of users updated, 0 or 1
+     */
+    @Transactional
+    @Modifying
+    @Query("update User u set u.profile = :profile, u.version = u.version + 1 where u.id = :id"
+            + " and (u.profile is null or u.profile = '' or u.profile = :sourceUrl)")
+    int updateProfileIfUnchanged(@Param("id") Long id, @Param("sourceUrl") String sourceUrl,
+                                 @Param("profile") String profile);
+
+    /**
+     * Sets the password of a user, unless the password was changed since it was read.
+     *
+     * @param id              the id of the user
+     * @param currentPassword the encoded password the user had when it was read
+     * @param password        the new encoded password
+     * @return the number of users updated, 0 or 1
+     */
+    @Transactional
+    @Modifying
+    @Query("update User u set u.password = :password, u.version = u.version + 1 where u.id = :id"
+            + " and u.password = :currentPassword")
+    int updatePasswordIfUnchanged(@Param("id") Long id, @Param("currentPassword") String currentPassword,
+                                  @Param("password") String password);
+
+    /**
+     * Streams the username and email of every user. Must be consumed inside a transaction and closed.
+     * The rows are read 1000 at a time through a server-side cursor (useCursorFetch on the connection pool).
+     *
+     * @return the keys of every user
+     */
+    @Query("select new com.hcmus.demo.user.UserKeys(u.username, u.email) from User u")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<UserKeys> streamAllKeys();
 }
\ No newline at end of file
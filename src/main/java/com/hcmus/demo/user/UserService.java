@@ -4,18 +4,20 @@ import com.hcmus.demo.exception_handler.exception.ExistingEmailException;
 import com.hcmus.demo.exception_handler.exception.ExistingUsernameException;
 import com.hcmus.demo.exception_handler.exception.UserNotFoundException;
 import com.hcmus.demo.model.User;
-import com.hcmus.demo.security.jwt.JwtUtility;
-import com.hcmus.demo.security.jwt.JwtValidationException;
-import io.jsonwebtoken.Claims;
+import com.hcmus.demo.security.jwt.JwtPrincipal;
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.util.Date;
+import java.util.Locale;
 
 /**
  * Service class for user-related operations.
- * This class provides methods for saving users, encoding passwords, checking unique email and username, and retrieving users by token.
+ * This class provides methods for saving users, encoding passwords, checking unique email and username, and retrieving the authenticated user.
+ * Lookups go through the user lookup cache; saved users are written to it.
  */
 @Service
 public class UserService {
@@ -23,7 +25,10 @@ public class UserService {
     private UserRepository userRepository;
 
     @Autowired
-    private JwtUtility jwtUtility;
+    private UserLookupCache userLookupCache;
+
+    @Autowired
+    private UserExistenceFilter userExistenceFilter;
 
     @Autowired
     private PasswordEncoder passwordEncoder;
@@ -31,27 +36,130 @@ public class UserService {
     private static final String USER_NOT_FOUND_MSG = "User with the given token not found";
     private static final String EMAIL_EXISTS_MSG = "Email already exists";
     private static final String USERNAME_EXISTS_MSG = "Username already exists";
+    private static final String LEGACY_FEDERATED_PASSWORD = "123456"; // Password federated users were created with
 
     /**
      * Saves a user to the repository.
      * Encodes the user's password and sets the creation date before saving.
+     * The password is hashed before any database work, and the user is inserted in a single statement:
+     * the unique constraints reject a duplicate username or email, even between concurrent registrations.
      *
      * @param user the user to save
      * @return the saved user
+     * @throws ExistingEmailException if the email is already used
+     * @throws ExistingUsernameException if the username is already used
      */
     public User saveUser(User user) throws ExistingEmailException, ExistingUsernameException {
+        encodePassword(user);
+        return insert(user);
+    }
 
-        if (!checkUniqueEmail(user.getEmail())) {
-            throw new ExistingEmailException(EMAIL_EXISTS_MSG);
+    /**
+     * Saves a user signed in through an external identity provider.
+     * The user gets an unusable password, which no password login matches, so nothing is hashed.
+     *
+     * @param user the user to save
+     * @return the saved user
+     * @throws ExistingEmailException if the email is already used
+     * @throws ExistingUsernameException if the username is already used
+     */
+    public User saveFederatedUser(User user) throws ExistingEmailException, ExistingUsernameException {
+        user.setPassword(User.UNUSABLE_PASSWORD);
+        return insert(user);
+    }
+
+    /**
+     * Retires the legacy password of a user signed in through an external identity provider.
+     * Federated users used to be created with the password "123456", which logged anyone in with their username;
+     * such a password is replaced with the unusable one. Other passwords are kept.
+     *
+     * @param user the user who signed in through the identity provider
+     * @return true if the legacy password was retired
+     */
+    public boolean retireLegacyFederatedPassword(User user) {
+        String password = user.getPassword();
+        if (User.UNUSABLE_PASSWORD.equals(password) || !passwordEncoder.matches(LEGACY_FEDERATED_PASSWORD, password)) {
+            return false;
         }
+        boolean updated = userRepository.updatePasswordIfUnchanged(user.getId(), password, User.UNUSABLE_PASSWORD) == 1;
+        userLookupCache.evictById(user.getId());
+        if (updated) {
+            user.setPassword(User.UNUSABLE_PASSWORD);
+        }
+        return updated;
+    }
+
+    /**
+     * Inserts a user with its password already encoded, and sets its creation date.
+     *
+     * @param user the user to insert
+     * @return the saved user
+     * @throws ExistingEmailException if the email is already used
+     * @throws ExistingUsernameException if the username is already used
+     */
+    private User insert(User user) throws ExistingEmailException, ExistingUsernameException {
+        user.setCreatedAt(new Date());
+
+        User savedUser;
+        try {
+            savedUser = userRepository.saveAndFlush(user);
+        } catch (DataIntegrityViolationException ex) {
+            rethrowAsDuplicate(ex, user);
+            throw ex;
+        }
+        userLookupCache.put(savedUser);
+        userExistenceFilter.add(savedUser.getUsername(), savedUser.getEmail());
+        return savedUser;
+    }
+
+    /**
+     * Translates a rejected insert into the exception of the duplicated key.
+     * The violated constraint is read from the exception; if the driver does not report it,
+     * the username and email are looked up.
+     *
+     * @param ex   the exception of the insert
+     * @param user the rejected user
+     * @throws ExistingEmailException if the email is already used
+     * @throws ExistingUsernameException if the username is already used; returns normally if neither is
+     */
+    private void rethrowAsDuplicate(DataIntegrityViolationException ex, User user)
+            throws ExistingEmailException, ExistingUsernameException {
+        String key = ex.getCause() instanceof ConstraintViolationException violation
+                ? uniqueKeyOf(violation.getConstraintName()) : null;
 
-        if (!checkUniqueUsername(user.getUsername())) {
+        if (User.UK_EMAIL.equals(key)) {
+            throw new ExistingEmailException(EMAIL_EXISTS_MSG);
+        }
+        if (User.UK_USERNAME.equals(key)) {
+            throw new ExistingUsernameException(USERNAME_EXISTS_MSG);
+        }
+        if (userRepository.existsByEmail(user.getEmail())) {
+            throw new ExistingEmailException(EMAIL_EXISTS_MSG);
+        }
+        if (userRepository.existsByUsername(user.getUsername())) {
             throw new ExistingUsernameException(USERNAME_EXISTS_MSG);
         }
+    }
 
-        encodePassword(user);
-        user.setCreatedAt(new Date());
-        return userRepository.save(user);
+    /**
+     * Tells which unique key of the user a constraint reported by the database is.
+     * Databases decorate the name, e.g. with the table or the index, so the key is searched in it.
+     *
+     * @param constraintName the name of the violated constraint, may be null
+     * @return User.UK_USERNAME or User.UK_EMAIL, or null if the constraint is neither
+     */
+    static String uniqueKeyOf(String constraintName) {
+        if (constraintName == null) {
+            return null;
+        }
+        String constraint = constraintName.toLowerCase(Locale.ROOT);
+        if (constraint.contains(User.UK_EMAIL)) {
+            return User.UK_EMAIL;
+        }
+        if (constraint.contains(User.UK_USERNAME)) {
+            return User.UK_USERNAME;
+        }
+        return null;
     }
 
     /**
@@ -67,51 +175,80 @@ public class UserService {
 
     /**
      * Checks if an email is unique.
+     * An email ruled out by the existence filter is unique without a database query;
+     * a possible hit is checked with an existence query.
      *
      * @param email the email to check
      * @return true if the email is unique, false otherwise
      */
     public boolean checkUniqueEmail(String email) {
-        User user = userRepository.findByEmail(email);
-        return user == null;
+        if (!userExistenceFilter.mightContainEmail(email)) {
+            return true;
+        }
+        boolean exists = userRepository.existsByEmail(email);
+        userExistenceFilter.recordPossibleHit(exists);
+        return !exists;
     }
 
     /**
      * Checks if a username is unique.
+     * A username ruled out by the existence filter is unique without a database query;
+     * a possible hit is checked with an existence query.
      *
      * @param username the username to check
      * @return true if the username is unique, false otherwise
      */
     public boolean checkUniqueUsername(String username) {
-        User user = userRepository.findByUsername(username);
-        return user == null;
+        if (!userExistenceFilter.mightContainUsername(username)) {
+            return true;
+        }
+        boolean exists = userRepository.existsByUsername(username);
+        userExistenceFilter.recordPossibleHit(exists);
+        return !exists;
     }
 
     /**
-     * Retrieves a user by token.
-     * Validates the token and extracts user details from it.
+     * Retrieves the authenticated user.
+     * The access token was verified by the JWT filter, so the user is read by its id, through the lookup cache.
      *
-     * @param token the token to validate and extract user details from
+     * @param principal the principal of the verified access token
      * @return the user associated with the token
-     * @throws JwtValidationException if the token is invalid
+     * @throws UserNotFoundException if the user no longer exists or was renamed
      */
-    public User getUserByToken(String token) throws JwtValidationException {
-        Claims claims = jwtUtility.validateAccessToken(token);
-        String subject = (String) claims.get(Claims.SUBJECT);
-        String[] array = subject.split(",");
-
-        Long userId = Long.valueOf(array[0]);
-        String username = array[1];
-
-        User user = userRepository.findByUsername(username);
-        if (user == null || user.getId() != userId) {
+    public User getAuthenticatedUser(JwtPrincipal principal) {
+        User user = userLookupCache.findById(principal.id());
+        if (user == null || !user.getUsername().equals(principal.username())) {
             throw new UserNotFoundException(USER_NOT_FOUND_MSG);
         }
         return user;
     }
 
+    /**
+     * Sets the profile image of a user, unless the profile was changed since the image was requested.
+     *
+     * @param id        the id of the user
+     * @param sourceUrl the profile the user had when the image was requested
+     * @param profile   the new profile image URL
+     * @return true if the profile was updated
+     */
+    public boolean updateProfile(Long id, String sourceUrl, String profile) {
+        boolean updated = userRepository.updateProfileIfUnchanged(id, sourceUrl, profile) == 1;
+        userLookupCache.evictById(id);
+        return updated;
+    }
+
     public User getUserByEmail(String email)
     {
-        return userRepository.findByEmail(email);
+        return userLookupCache.findByEmail(email);
+    }
+
+    /**
+     * Retrieves a user by id.
+     *
+     * @param id the id of the user
+     * @return the user with the given id, or null if no user found
+     */
+    public User getUserById(Long id) {
+        return userLookupCache.findById(id);
     }
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+package com.hcmus.demo.user;
+
+import java.util.Date;
+
+/**
+ * User as listed in the admin console, read without loading the user entity.
+ *
+ * @param id        the unique identifier of the user
+ * @param username  the username of the user
+ * @param email     the email address of the user
+ * @param profile   the profile picture URL of the user
+ * @param createdAt the creation date of the user
+ */
+public record UserSummary(Long id, String username, String email, String profile, Date createdAt) {
+}
@@ -1,17 +1,21 @@
 package com.hcmus.demo.util;
 import com.cloudinary.Cloudinary;
 import com.cloudinary.utils.ObjectUtils;
+import com.hcmus.demo.image.ImageStorage;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 
 @Component
+@ConditionalOnProperty(name = "app.image.storage", havingValue = "cloudinary", matchIfMissing = true)
 @RequiredArgsConstructor
-public class CloudinaryUtil {
+public class CloudinaryUtil implements ImageStorage {
     private final Cloudinary cloudinary;
 
     public CloudinaryUtil() {
@@ -21,6 +25,18 @@ public class CloudinaryUtil {
     
     private final Logger logger = LoggerFactory.getLogger(CloudinaryUtil.class);
 
+    @Override
+    public String store(String sourceUrl) throws IOException {
+        Map<?, ?> uploadResult = cloudinary.uploader().upload(sourceUrl, ObjectUtils.emptyMap());
+        return uploadResult.get("url").toString();
+    }
+
+    @Override
+    public String store(InputStream content) throws IOException {
+        Map<?, ?> uploadResult = cloudinary.uploader().upload(content.readAllBytes(), ObjectUtils.emptyMap());
+        return uploadResult.get("url").toString();
+    }
+
     public String uploadImageToCloudinary(String imageUrl) {
         try {
             // Upload the image using its URL
@@ -0,0 +1,186 @@
+package com.hcmus.demo.virtualthreads;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Data source letting a bounded number of threads hold a connection at once, in front of the connection pool.
+ * With virtual threads, thousands of requests may ask for a connection together: they wait here, in order,
+ * on a semaphore that parks without pinning their carrier, and at most "max waiting" of them wait at all;
+ * the others, and those waiting longer than the acquire timeout, fail fast with SQLTransientConnectionException.
+ * Keeping the threads inside the JDBC driver to the pool size also bounds the carriers pinned by its
+ * synchronized blocks. The permit is released when the connection is closed.
+ */
+public class ConcurrencyLimitedDataSource extends DelegatingDataSource implements MeterBinder {
+    private static final String QUEUE_FULL_MSG = "Too many threads waiting for a database connection";
+    private static final String TIMEOUT_MSG = "Timed out waiting for a database connection";
+
+    private final int maxConcurrency;
+    private final int maxWaiting;
+    private final long acquireTimeoutMillis;
+    private final Semaphore permits; // One per connection in use, granted in arrival order
+    private final AtomicInteger waiting = new AtomicInteger(); // Threads waiting for a permit
+
+    private volatile Timer waitTimer;
+    private volatile Counter queueFullCounter;
+    private volatile Counter timeoutCounter;
+
+    public ConcurrencyLimitedDataSource(DataSource targetDataSource, int maxConcurrency, int maxWaiting,
+                                        long acquireTimeoutMillis) {
+        super(targetDataSource);
+        this.maxConcurrency = maxConcurrency;
+        this.maxWaiting = maxWaiting;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    /**
+     * Registers the metrics of the guard.
+     *
+     * @param registry the meter registry
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        waitTimer = Timer.builder("datasource.guard.wait")
+                .description("Time spent waiting for a database connection permit")
+                .register(registry);
+        queueFullCounter = rejectedCounter(registry, "queue-full");
+        timeoutCounter = rejectedCounter(registry, "timeout");
+        Gauge.builder("datasource.guard.active", permits, p -> maxConcurrency - p.availablePermits())
+                .description("Database connections in use through the guard")
+                .register(registry);
+        Gauge.builder("datasource.guard.waiting", waiting, AtomicInteger::get)
+                .description("Threads waiting for a database connection permit")
+                .register(registry);
+    }
+
+    private static Counter rejectedCounter(MeterRegistry registry, String reason) {
+        return Counter.builder("datasource.guard.rejected")
+                .description("Database connection requests rejected by the guard, by reason")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    /**
+     * Gets a connection once a permit is available.
+     *
+     * @return the connection, releasing its permit when closed
+     * @throws SQLException if no permit is available in time, or the pool fails
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquire();
+        try {
+            return guard(obtainTargetDataSource().getConnection());
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Gets a connection for the given user once a permit is available.
+     *
+     * @param username the database user
+     * @param password the password of the database user
+     * @return the connection, releasing its permit when closed
+     * @throws SQLException if no permit is available in time, or the pool fails
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquire();
+        try {
+            return guard(obtainTargetDataSource().getConnection(username, password));
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    private void acquire() throws SQLException {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        if (waiting.incrementAndGet() > maxWaiting) {
+            waiting.decrementAndGet();
+            increment(queueFullCounter);
+            throw new SQLTransientConnectionException(QUEUE_FULL_MSG);
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                increment(timeoutCounter);
+                throw new SQLTransientConnectionException(TIMEOUT_MSG);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException(TIMEOUT_MSG, ex);
+        } finally {
+            waiting.decrementAndGet();
+            Timer timer = waitTimer;
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    /**
+     * Wraps the connection so that closing it releases the permit, once.
+     */
+    private Connection guard(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean();
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                default -> {
+                }
+            }
+            if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+                try {
+                    return invoke(connection, method, args);
+                } finally {
+                    permits.release();
+                }
+            }
+            return invoke(connection, method, args);
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, handler);
+    }
+
+    private static Object invoke(Connection connection, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(connection, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getTargetException();
+        }
+    }
+}
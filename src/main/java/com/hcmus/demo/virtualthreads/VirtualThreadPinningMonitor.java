@@ -0,0 +1,97 @@
+package com.hcmus.demo.virtualthreads;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Reports the virtual threads pinned to their carrier, from the JDK Flight Recorder jdk.VirtualThreadPinned events.
+ * A virtual thread blocking inside a synchronized block or a native frame keeps its carrier thread, e.g. in the JDBC
+ * driver or the image storage client; too many at once starve the other virtual threads.
+ * Pinnings longer than the threshold are timed by the frame that blocked, the first frame outside the JDK,
+ * and the stack trace of each such frame is logged once.
+ */
+public class VirtualThreadPinningMonitor implements SmartLifecycle {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final List<String> JDK_PACKAGES = List.of("java.", "javax.", "jdk.", "sun.");
+
+    private final MeterRegistry meterRegistry;
+    private final Duration threshold;
+    private final Set<String> reportedFrames = ConcurrentHashMap.newKeySet(); // Frames whose stack trace was logged
+
+    private volatile RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry, Duration threshold) {
+        this.meterRegistry = meterRegistry;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Starts recording the pinning events.
+     */
+    @Override
+    public void start() {
+        RecordingStream recording = new RecordingStream();
+        recording.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recording.onEvent(PINNED_EVENT, this::onPinned);
+        recording.startAsync();
+        stream = recording;
+        LOGGER.info("Reporting virtual threads pinned for more than {}", threshold);
+    }
+
+    /**
+     * Stops recording the pinning events.
+     */
+    @Override
+    public void stop() {
+        RecordingStream recording = stream;
+        if (recording != null) {
+            recording.close();
+            stream = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return stream != null;
+    }
+
+    private void onPinned(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        List<RecordedFrame> frames = stackTrace != null ? stackTrace.getFrames() : List.of();
+        String frame = frames.stream()
+                .filter(RecordedFrame::isJavaFrame)
+                .map(f -> f.getMethod().getType().getName() + "." + f.getMethod().getName())
+                .filter(name -> JDK_PACKAGES.stream().noneMatch(name::startsWith))
+                .findFirst()
+                .orElse("unknown");
+
+        Timer.builder("jvm.threads.virtual.pinned")
+                .description("Virtual threads pinned to their carrier longer than the threshold, by blocking frame")
+                .tag("frame", frame)
+                .register(meterRegistry)
+                .record(event.getDuration());
+
+        if (reportedFrames.add(frame)) {
+            String trace = frames.stream()
+                    .map(f -> "\tat " + f.getMethod().getType().getName() + "." + f.getMethod().getName()
+                            + "(line " + f.getLineNumber() + ")")
+                    .collect(Collectors.joining(System.lineSeparator()));
+            LOGGER.warn("Virtual thread pinned for {} in {}{}{}", event.getDuration(), frame,
+                    System.lineSeparator(), trace);
+        }
+    }
+}
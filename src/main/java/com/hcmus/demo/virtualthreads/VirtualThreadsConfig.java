@@ -0,0 +1,79 @@
+package com.hcmus.demo.virtualthreads;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Configuration of the virtual-thread execution mode, enabled with spring.threads.virtual.enabled on Java 21
+ * (the virtual-threads Maven and Spring profiles). Spring Boot then runs the Tomcat requests and the scheduled jobs
+ * on virtual threads. The identity provider clients run on the request's virtual thread once the circuit breaker's
+ * time limiter and thread-pool bulkhead, which would run them on a platform-thread executor, are disabled
+ * (application-virtual-threads.properties).
+ * This configuration adds the pinning diagnostics and the concurrency guard in front of the data source.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadsConfig {
+
+    /**
+     * Creates the monitor reporting the virtual threads pinned to their carrier.
+     *
+     * @param meterRegistry the meter registry
+     * @param threshold     the shortest pinning reported
+     * @return the pinning monitor
+     */
+    @Bean
+    public VirtualThreadPinningMonitor virtualThreadPinningMonitor(
+            MeterRegistry meterRegistry,
+            @Value("${app.virtual-threads.pinning.threshold:20ms}") Duration threshold) {
+        return new VirtualThreadPinningMonitor(meterRegistry, threshold);
+    }
+
+    /**
+     * Wraps the data source in a ConcurrencyLimitedDataSource.
+     * The limit defaults to the connection pool size.
+     *
+     * @param environment the environment holding the guard settings
+     * @return the post processor wrapping the data source
+     */
+    @Bean
+    public static BeanPostProcessor concurrencyLimitedDataSourcePostProcessor(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource dataSource) || bean instanceof ConcurrencyLimitedDataSource) {
+                    return bean;
+                }
+                int poolSize = environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10);
+                return new ConcurrencyLimitedDataSource(dataSource,
+                        environment.getProperty("app.datasource.guard.max-concurrency", Integer.class, poolSize),
+                        environment.getProperty("app.datasource.guard.max-waiting", Integer.class, 1000),
+                        environment.getProperty("app.datasource.guard.acquire-timeout-ms", Long.class, 5000L));
+            }
+        };
+    }
+
+    /**
+     * Registers the metrics of the data source guard.
+     *
+     * @param dataSource the guarded data source
+     * @return the binder of the guard metrics
+     */
+    @Bean
+    public MeterBinder concurrencyLimitedDataSourceMetrics(DataSource dataSource) {
+        return registry -> {
+            if (dataSource instanceof ConcurrencyLimitedDataSource guard) {
+                guard.bindTo(registry);
+            }
+        };
+    }
+}
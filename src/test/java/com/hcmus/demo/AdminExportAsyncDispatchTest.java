@@ -0,0 +1,134 @@
+package com.hcmus.demo;
+
+import com.hcmus.demo.config.WebConfig;
+import com.hcmus.demo.exception_handler.GlobalExceptionHandler;
+import com.hcmus.demo.model.Role;
+import com.hcmus.demo.security.CustomUserCache;
+import com.hcmus.demo.security.WebSecurityConfig;
+import com.hcmus.demo.security.jwt.JwtPrincipal;
+import com.hcmus.demo.security.jwt.JwtTokenFilter;
+import com.hcmus.demo.security.jwt.JwtUtility;
+import com.hcmus.demo.user.UserAdminApi;
+import com.hcmus.demo.user.UserImportService;
+import com.hcmus.demo.user.UserListingService;
+import com.hcmus.demo.user.UserLookupCache;
+import com.hcmus.demo.user.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Streams the user export through the security filter chain, including its async dispatch,
+ * and checks that the export permit is released once.
+ */
+@SpringBootTest(classes = AdminExportAsyncDispatchTest.Config.class, webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+public class AdminExportAsyncDispatchTest {
+    private static final String EXPORT = "{\"id\":1,\"username\":\"admin\"}\n";
+
+    private final AtomicInteger releases = new AtomicInteger();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private JwtUtility jwtUtility;
+
+    @MockBean
+    private CustomUserCache userCache;
+
+    @MockBean
+    private UserLookupCache userLookupCache;
+
+    @MockBean
+    private UserRepository userRepository;
+
+    @MockBean
+    private UserListingService userListingService;
+
+    @MockBean
+    private UserImportService userImportService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        when(jwtUtility.authenticateAccessToken("admin-token")).thenReturn(new JwtPrincipal(1L, "root", Role.ADMIN));
+        when(jwtUtility.authenticateAccessToken("user-token")).thenReturn(new JwtPrincipal(2L, "user"));
+        when(jwtUtility.authenticateAccessToken("admin-named-token")).thenReturn(new JwtPrincipal(3L, "admin"));
+        when(userListingService.export()).thenAnswer(invocation -> new UserListingService.Export(
+                output -> output.write(EXPORT.getBytes(StandardCharsets.UTF_8)), releases::incrementAndGet));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        releases.set(0);
+    }
+
+    @Test
+    public void asyncDispatchOfTheExportIsAuthorized() throws Exception {
+        MvcResult result = mockMvc.perform(get("/admin/users/export")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer admin-token"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(EXPORT));
+        assertEquals(1, releases.get());
+    }
+
+    @Test
+    public void exportIsForbiddenToOtherUsers() throws Exception {
+        mockMvc.perform(get("/admin/users/export")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer user-token"))
+                .andExpect(status().isForbidden());
+        assertEquals(0, releases.get());
+    }
+
+    @Test
+    public void exportIsForbiddenToAUserNamedAdminWithoutTheRole() throws Exception {
+        mockMvc.perform(get("/admin/users/export")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer admin-named-token"))
+                .andExpect(status().isForbidden());
+        assertEquals(0, releases.get());
+    }
+
+    @Test
+    public void releasingAnExportTwiceReleasesItsPermitOnce() {
+        UserListingService.Export export = userListingService.export();
+
+        export.release();
+        export.release();
+
+        assertEquals(1, releases.get());
+    }
+
+    @Configuration
+    @EnableAutoConfiguration(exclude = {DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class})
+    @Import({UserAdminApi.class, WebSecurityConfig.class, WebConfig.class, JwtTokenFilter.class,
+            GlobalExceptionHandler.class})
+    static class Config {
+    }
+}
@@ -0,0 +1,120 @@
+package com.hcmus.demo;
+
+import com.hcmus.demo.security.auth.AuthenticationExecutor;
+import com.hcmus.demo.security.auth.AuthenticationUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the authentication executor rejects work beyond its queue and still queued at its deadline.
+ */
+public class AuthenticationExecutorTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private AuthenticationExecutor executor;
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void runsOffTheCallingThread() throws Exception {
+        executor = new AuthenticationExecutor(meterRegistry, true, 1, 1, 5000);
+        Thread caller = Thread.currentThread();
+
+        assertTrue(executor.submit(() -> Thread.currentThread() != caller).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void runsOnTheCallingThreadWhenDisabled() throws Exception {
+        executor = new AuthenticationExecutor(meterRegistry, false, 1, 1, 5000);
+        Thread caller = Thread.currentThread();
+
+        CompletableFuture<Boolean> result = executor.submit(() -> Thread.currentThread() == caller);
+
+        assertTrue(result.isDone());
+        assertTrue(result.get());
+    }
+
+    @Test
+    public void rejectsWorkBeyondTheQueue() throws Exception {
+        executor = new AuthenticationExecutor(meterRegistry, true, 1, 1, 5000);
+        executor.submit(this::blockUntilReleased);
+        executor.submit(this::blockUntilReleased);
+
+        CompletableFuture<String> rejected = executor.submit(() -> "rejected");
+
+        assertUnavailable(rejected);
+        assertEquals(1, meterRegistry.get("auth.executor.rejected").tag("reason", "saturated").counter().count());
+    }
+
+    @Test
+    public void dropsQueuedWorkPastTheDeadline() throws Exception {
+        executor = new AuthenticationExecutor(meterRegistry, true, 1, 1, 200);
+        executor.submit(this::blockUntilReleased);
+        AtomicBoolean ran = new AtomicBoolean();
+
+        CompletableFuture<String> queued = executor.submit(() -> {
+            ran.set(true);
+            return "late";
+        });
+
+        assertUnavailable(queued);
+        release.countDown();
+        Thread.sleep(100);
+        assertFalse(ran.get());
+    }
+
+    @Test
+    public void answersWorkRunningPastTheDeadlineWithItsOwnResult() throws Exception {
+        executor = new AuthenticationExecutor(meterRegistry, true, 1, 1, 200);
+
+        // A slow refresh: the token is rotated after the deadline, the client must still receive it
+        CompletableFuture<String> refresh = executor.submit(() -> {
+            Thread.sleep(500);
+            return "rotated";
+        });
+
+        assertEquals("rotated", refresh.get(5, TimeUnit.SECONDS));
+        assertEquals(0, meterRegistry.get("auth.executor.rejected").tag("reason", "deadline").counter().count());
+    }
+
+    @Test
+    public void reportsTheFailureOfTheWork() {
+        executor = new AuthenticationExecutor(meterRegistry, true, 1, 1, 5000);
+
+        CompletableFuture<String> failed = executor.submit(() -> {
+            throw new IllegalStateException("failed");
+        });
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, ex.getCause());
+    }
+
+    private String blockUntilReleased() throws InterruptedException {
+        release.await(10, TimeUnit.SECONDS);
+        return "released";
+    }
+
+    private static void assertUnavailable(CompletableFuture<?> future) {
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(AuthenticationUnavailableException.class, ex.getCause());
+    }
+}
@@ -0,0 +1,177 @@
+package com.hcmus.demo;
+
+import com.hcmus.demo.exception_handler.GlobalExceptionHandler;
+import com.hcmus.demo.model.User;
+import com.hcmus.demo.security.auth.AuthController;
+import com.hcmus.demo.security.auth.AuthResponse;
+import com.hcmus.demo.security.auth.AuthenticationExecutor;
+import com.hcmus.demo.security.auth.AuthenticationService;
+import com.hcmus.demo.security.auth.TokenService;
+import com.hcmus.demo.security.jwt.JwtPrincipal;
+import com.hcmus.demo.user.UserApi;
+import com.hcmus.demo.user.UserImportService;
+import com.hcmus.demo.user.UserMapper;
+import com.hcmus.demo.user.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.ManagementWebSecurityAutoConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.UserDetailsServiceAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.MethodParameter;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs a storm of OAuth sign-ins against a slow stubbed identity provider on a small Tomcat pool,
+ * and measures the latency of the profile endpoint before and during the storm.
+ * The sign-ins wait on the authentication executor, not on request threads, so the profile latency stays flat;
+ * with app.auth.async.enabled=false, the storm holds every request thread and the profile waits for the sign-ins.
+ */
+@SpringBootTest(classes = AuthenticationLoadTest.Config.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "server.tomcat.threads.max=16",
+                "server.tomcat.threads.min-spare=16",
+                "app.auth.async.threads=64",
+                "app.auth.async.queue-capacity=512",
+                "app.auth.async.deadline-ms=20000"
+        })
+public class AuthenticationLoadTest {
+    private static final int SIGN_INS = 256;
+    private static final long PROVIDER_DELAY_MS = 1000;
+    private static final int PROFILE_SAMPLES = 50;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    @LocalServerPort
+    private int port;
+
+    @MockBean
+    private AuthenticationService authenticationService;
+
+    @MockBean
+    private AuthenticationManager authenticationManager;
+
+    @MockBean
+    private TokenService tokenService;
+
+    @MockBean
+    private UserService userService;
+
+    @MockBean
+    private UserImportService userImportService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        User user = User.builder().id(1L).username("user").email("user@example.com").version(0).build();
+        when(userService.getAuthenticatedUser(any())).thenReturn(user);
+        when(authenticationService.outboundAuthentication(anyString())).thenAnswer(invocation -> {
+            Thread.sleep(PROVIDER_DELAY_MS); // Slow token exchange of the identity provider
+            AuthResponse response = new AuthResponse();
+            response.setAccessToken("access-token");
+            return response;
+        });
+    }
+
+    @Test
+    public void profileLatencyStaysFlatDuringSignInStorm() throws Exception {
+        long baseline = percentile(sampleProfile(), 95);
+
+        List<CompletableFuture<HttpResponse<String>>> signIns = new ArrayList<>();
+        for (int i = 0; i < SIGN_INS; i++) {
+            signIns.add(httpClient.sendAsync(HttpRequest.newBuilder(uri("/auth/outbound/authentication?code=code-" + i))
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .timeout(Duration.ofSeconds(30))
+                    .build(), HttpResponse.BodyHandlers.ofString()));
+        }
+        Thread.sleep(200); // Let the storm take the executor threads
+        long duringStorm = percentile(sampleProfile(), 95);
+
+        for (CompletableFuture<HttpResponse<String>> signIn : signIns) {
+            assertEquals(200, signIn.join().statusCode());
+        }
+        assertTrue(duringStorm < baseline + 250,
+                "profile p95 " + duringStorm + " ms during the storm, " + baseline + " ms before");
+    }
+
+    private List<Long> sampleProfile() throws Exception {
+        List<Long> latencies = new ArrayList<>();
+        for (int i = 0; i < PROFILE_SAMPLES; i++) {
+            long start = System.nanoTime();
+            HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(uri("/user/profile"))
+                    .timeout(Duration.ofSeconds(30))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            latencies.add((System.nanoTime() - start) / 1_000_000);
+            assertEquals(200, response.statusCode());
+        }
+        return latencies;
+    }
+
+    private static long percentile(List<Long> latencies, int percentile) {
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return sorted.get(Math.min(sorted.size() - 1, sorted.size() * percentile / 100));
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + port + path);
+    }
+
+    @Configuration
+    @EnableAutoConfiguration(exclude = {DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class,
+            SecurityAutoConfiguration.class, UserDetailsServiceAutoConfiguration.class,
+            ManagementWebSecurityAutoConfiguration.class})
+    @Import({AuthController.class, UserApi.class, UserMapper.class, AuthenticationExecutor.class,
+            GlobalExceptionHandler.class})
+    static class Config implements WebMvcConfigurer {
+
+        /**
+         * Stands in for the JWT filter: every request is made by the same user.
+         */
+        @Override
+        public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+            resolvers.add(new HandlerMethodArgumentResolver() {
+                @Override
+                public boolean supportsParameter(MethodParameter parameter) {
+                    return parameter.getParameterType() == JwtPrincipal.class;
+                }
+
+                @Override
+                public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                              NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+                    return new JwtPrincipal(1L, "user");
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.hcmus.demo;
+
+import com.hcmus.demo.image.AvatarIngestionService;
+import com.hcmus.demo.security.auth.AuthenticationService;
+import com.hcmus.demo.security.auth.ExchangeTokenResponse;
+import com.hcmus.demo.security.auth.IdTokenVerifier;
+import com.hcmus.demo.security.auth.OutboundUserResponse;
+import com.hcmus.demo.security.auth.TokenService;
+import com.hcmus.demo.security.httpclient.OutboundIdentityClient;
+import com.hcmus.demo.security.httpclient.OutboundUserClient;
+import com.hcmus.demo.user.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that sign-ins with an email address the identity provider has not verified are rejected
+ * before any account is looked up or created.
+ */
+public class AuthenticationServiceTest {
+    private final OutboundIdentityClient identityClient = mock(OutboundIdentityClient.class);
+    private final OutboundUserClient userClient = mock(OutboundUserClient.class);
+    private final UserService userService = mock(UserService.class);
+    private final TokenService tokenService = mock(TokenService.class);
+    private final AvatarIngestionService avatarIngestionService = mock(AvatarIngestionService.class);
+    private final IdTokenVerifier idTokenVerifier = mock(IdTokenVerifier.class);
+    private final AuthenticationService authenticationService = new AuthenticationService(identityClient, userClient,
+            userService, tokenService, avatarIngestionService, idTokenVerifier);
+
+    @Test
+    public void unverifiedEmailOfTheIdTokenIsRejected() throws Exception {
+        when(identityClient.exchangeToken(any())).thenReturn(ExchangeTokenResponse.builder()
+                .accessToken("access-token").idToken("id-token").build());
+        when(idTokenVerifier.verify("id-token")).thenReturn(unverifiedUser());
+
+        assertThrows(BadCredentialsException.class, () -> authenticationService.outboundAuthentication("code"));
+        verifyNoInteractions(userService, tokenService);
+    }
+
+    @Test
+    public void unverifiedEmailOfTheUserInfoIsRejected() throws Exception {
+        when(identityClient.exchangeToken(any())).thenReturn(ExchangeTokenResponse.builder()
+                .accessToken("access-token").build());
+        when(userClient.getUserInfo(anyString(), anyString())).thenReturn(unverifiedUser());
+
+        assertThrows(BadCredentialsException.class, () -> authenticationService.outboundAuthentication("code"));
+        verifyNoInteractions(userService, tokenService);
+    }
+
+    private static OutboundUserResponse unverifiedUser() {
+        return OutboundUserResponse.builder()
+                .email("victim@example.com")
+                .verifiedEmail(false)
+                .name("attacker")
+                .build();
+    }
+}
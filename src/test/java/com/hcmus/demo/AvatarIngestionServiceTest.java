@@ -0,0 +1,143 @@
+package com.hcmus.demo;
+
+import com.hcmus.demo.image.AvatarIngestionService;
+import com.hcmus.demo.image.ImageStorage;
+import com.hcmus.demo.user.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the avatar ingestion pipeline against an in-memory storage that can fail or block on demand.
+ */
+public class AvatarIngestionServiceTest {
+    private static final String SOURCE_URL = "https://lh3.googleusercontent.com/a/avatar";
+    private static final String HOSTED_URL = "https://images.example.com/avatar";
+
+    private FakeImageStorage storage;
+    private UserService userService;
+    private AvatarIngestionService service;
+
+    @BeforeEach
+    public void setUp() {
+        storage = new FakeImageStorage();
+        userService = mock(UserService.class);
+        when(userService.updateProfile(anyLong(), anyString(), anyString())).thenReturn(true);
+        service = new AvatarIngestionService(storage, userService, new SimpleMeterRegistry(), 2, 10, 3, 1, 10);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        storage.release.countDown();
+        service.shutdown();
+    }
+
+    @Test
+    public void storesTheAvatarAndUpdatesTheProfile() {
+        storage.release.countDown();
+
+        assertTrue(service.submit(1L, SOURCE_URL));
+
+        verify(userService, timeout(2000)).updateProfile(1L, SOURCE_URL, HOSTED_URL);
+        assertEquals(1, storage.calls.get());
+    }
+
+    @Test
+    public void retriesAFailedUploadWithBackoff() {
+        storage.failures.set(2);
+        storage.release.countDown();
+
+        assertTrue(service.submit(1L, SOURCE_URL));
+
+        verify(userService, timeout(2000)).updateProfile(1L, SOURCE_URL, HOSTED_URL);
+        assertEquals(3, storage.calls.get());
+    }
+
+    @Test
+    public void givesUpAfterTheMaximumAttempts() {
+        storage.failures.set(Integer.MAX_VALUE);
+        storage.release.countDown();
+
+        assertTrue(service.submit(1L, SOURCE_URL));
+
+        verify(userService, after(500).never()).updateProfile(any(), any(), any());
+        assertEquals(3, storage.calls.get());
+        assertFalse(service.isPending(1L));
+    }
+
+    @Test
+    public void ignoresASecondSubmissionWhileOneIsPending() {
+        assertTrue(service.submit(1L, SOURCE_URL));
+        assertFalse(service.submit(1L, SOURCE_URL));
+        assertTrue(service.isPending(1L));
+
+        storage.release.countDown();
+
+        verify(userService, timeout(2000)).updateProfile(1L, SOURCE_URL, HOSTED_URL);
+        assertEquals(1, storage.calls.get());
+    }
+
+    @Test
+    public void rejectsSubmissionsBeyondTheQueueCapacity() {
+        int accepted = 0;
+        for (long userId = 1; userId <= 20; userId++) {
+            if (service.submit(userId, SOURCE_URL)) {
+                accepted++;
+            }
+        }
+
+        assertEquals(10, accepted);
+        verify(userService, never()).updateProfile(any(), any(), any());
+    }
+
+    /**
+     * Storage answering a fixed hosted URL, after the release latch opens and the configured failures are spent.
+     */
+    private static class FakeImageStorage implements ImageStorage {
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public String store(String sourceUrl) throws IOException {
+            try {
+                if (!release.await(5, TimeUnit.SECONDS)) {
+                    throw new IOException("Storage blocked");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ex);
+            }
+            calls.incrementAndGet();
+            if (failures.getAndDecrement() > 0) {
+                throw new IOException("Storage unavailable");
+            }
+            return HOSTED_URL;
+        }
+
+        @Override
+        public String store(InputStream content) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
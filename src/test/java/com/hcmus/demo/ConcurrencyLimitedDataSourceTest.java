@@ -0,0 +1,100 @@
+package com.hcmus.demo;
+
+import com.hcmus.demo.virtualthreads.ConcurrencyLimitedDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that the data source guard limits the connections in use and the threads waiting for one.
+ */
+public class ConcurrencyLimitedDataSourceTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DataSource pool = mock(DataSource.class);
+    private Connection connection;
+    private ConcurrencyLimitedDataSource dataSource;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        connection = mock(Connection.class);
+        when(pool.getConnection()).thenReturn(connection);
+        dataSource = new ConcurrencyLimitedDataSource(pool, 1, 1, 200);
+        dataSource.bindTo(meterRegistry);
+    }
+
+    @Test
+    public void waitsForTheConnectionInUse() throws Exception {
+        Connection first = dataSource.getConnection();
+        CompletableFuture<Connection> second = acquireAsync();
+        awaitWaiting();
+
+        first.close();
+
+        assertNotNull(second.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failsAfterTheAcquireTimeout() throws Exception {
+        dataSource.getConnection();
+
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        assertEquals(1, meterRegistry.get("datasource.guard.rejected").tag("reason", "timeout").counter().count());
+    }
+
+    @Test
+    public void rejectsThreadsBeyondTheWaitingLimit() throws Exception {
+        dataSource.getConnection();
+        CompletableFuture<Connection> waiter = acquireAsync();
+        awaitWaiting();
+
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        assertEquals(1, meterRegistry.get("datasource.guard.rejected").tag("reason", "queue-full").counter().count());
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(SQLTransientConnectionException.class, ex.getCause());
+    }
+
+    @Test
+    public void closingTwiceReleasesOnce() throws Exception {
+        Connection first = dataSource.getConnection();
+        first.close();
+        first.close();
+
+        dataSource.getConnection();
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        verify(connection, times(2)).close();
+    }
+
+    private CompletableFuture<Connection> acquireAsync() {
+        CompletableFuture<Connection> result = new CompletableFuture<>();
+        new Thread(() -> {
+            try {
+                result.complete(dataSource.getConnection());
+            } catch (Exception ex) {
+                result.completeExceptionally(ex);
+            }
+        }).start();
+        return result;
+    }
+
+    private void awaitWaiting() {
+        while (meterRegistry.get("datasource.guard.waiting").gauge().value() < 1) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.hcmus.demo;
+
+import com.hcmus.demo.image.DeduplicatingImageStorage;
+import com.hcmus.demo.image.ImageStorage;
+import com.hcmus.demo.image.StoredImageRepository;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Stores images through the deduplication layer, with its digest index in an embedded database
+ * and the source images served by a local HTTP server.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:images;MODE=MySQL;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class DeduplicatingImageStorageTest {
+    private static final byte[] AVATAR = "shared-default-avatar".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private StoredImageRepository storedImageRepository;
+
+    private HttpServer server;
+    private final AtomicInteger fetches = new AtomicInteger();
+    private final CountingImageStorage delegate = new CountingImageStorage();
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            fetches.incrementAndGet();
+            exchange.sendResponseHeaders(200, AVATAR.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(AVATAR);
+            }
+        });
+        server.start();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+        storedImageRepository.deleteAll();
+    }
+
+    @Test
+    public void sameUrlIsFetchedAndUploadedOnce() throws IOException {
+        ImageStorage storage = newStorage();
+
+        String first = storage.store(url("/a.png"));
+        String second = storage.store(url("/a.png"));
+
+        assertEquals(first, second);
+        assertEquals(1, fetches.get());
+        assertEquals(1, delegate.uploads.get());
+        assertEquals(AVATAR.length, meterRegistry.get("image.dedup.bytes.saved").functionCounter().count());
+    }
+
+    @Test
+    public void sameContentFromAnotherUrlIsNotUploadedAgain() throws IOException {
+        ImageStorage storage = newStorage();
+
+        String first = storage.store(url("/a.png"));
+        String second = storage.store(url("/b.png"));
+        String third = storage.store(new ByteArrayInputStream(AVATAR));
+
+        assertEquals(first, second);
+        assertEquals(first, third);
+        assertEquals(2, fetches.get());
+        assertEquals(1, delegate.uploads.get());
+        assertEquals(2.0 / 3, meterRegistry.get("image.dedup.ratio").gauge().value(), 1e-9);
+    }
+
+    @Test
+    public void indexSurvivesTheInMemoryCache() throws IOException {
+        String first = newStorage().store(url("/a.png"));
+        String second = newStorage().store(url("/a.png"));
+
+        assertEquals(first, second);
+        assertEquals(1, fetches.get());
+        assertEquals(1, delegate.uploads.get());
+    }
+
+    private ImageStorage newStorage() {
+        meterRegistry = new SimpleMeterRegistry();
+        return new DeduplicatingImageStorage(delegate, storedImageRepository, meterRegistry,
+                100, Duration.ofSeconds(5), 1024 * 1024);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    /**
+     * Storage answering a new URL for every upload.
+     */
+    private static class CountingImageStorage implements ImageStorage {
+        private final AtomicInteger uploads = new AtomicInteger();
+
+        @Override
+        public String store(String sourceUrl) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String store(InputStream content) throws IOException {
+            content.readAllBytes();
+            return "https://images.example.com/" + uploads.incrementAndGet();
+        }
+    }
+}
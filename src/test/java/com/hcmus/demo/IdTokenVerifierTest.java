@@ -0,0 +1,223 @@
+package com.hcmus.demo;
+
+import com.hcmus.demo.security.auth.IdTokenVerifier;
+import com.hcmus.demo.security.auth.OutboundUserResponse;
+import com.hcmus.demo.security.jwt.JwksSource;
+import com.hcmus.demo.security.jwt.JwtValidationException;
+import com.hcmus.demo.security.jwt.RemoteJwksKeyCache;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifies ID tokens against a local key set, counting the key set fetches.
+ */
+public class IdTokenVerifierTest {
+    private static final String ISSUER = "https://accounts.google.com";
+    private static final String AUDIENCE = "test-client";
+
+    private final KeyPair firstKey = generateKeyPair();
+    private final KeyPair rotatedKey = generateKeyPair();
+    private final AtomicInteger fetches = new AtomicInteger();
+    private final MutableClock clock = new MutableClock();
+
+    private volatile String jwks;
+    private volatile Duration maxAge = Duration.ofHours(1);
+    private volatile CountDownLatch fetchGate = new CountDownLatch(0);
+
+    private IdTokenVerifier verifier;
+
+    @BeforeEach
+    public void setUp() {
+        jwks = jwks(jwk("first", firstKey));
+        JwksSource source = () -> {
+            fetches.incrementAndGet();
+            try {
+                fetchGate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return new JwksSource.JwksDocument(jwks, maxAge);
+        };
+        RemoteJwksKeyCache keyCache = new RemoteJwksKeyCache(source, Duration.ofMinutes(5), Duration.ofSeconds(30), clock);
+        verifier = new IdTokenVerifier(keyCache, Set.of(ISSUER), AUDIENCE);
+    }
+
+    @Test
+    public void verifiesTheTokenAndReadsTheUser() throws Exception {
+        OutboundUserResponse user = verifier.verify(token("first", firstKey, AUDIENCE, ISSUER));
+
+        assertEquals("subject-1", user.getId());
+        assertEquals("user@example.com", user.getEmail());
+        assertTrue(user.isVerifiedEmail());
+        assertEquals("User Name", user.getName());
+        assertEquals("https://example.com/picture.png", user.getPicture());
+    }
+
+    @Test
+    public void cachesTheKeySet() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            verifier.verify(token("first", firstKey, AUDIENCE, ISSUER));
+        }
+
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void refetchesOnceTheMaxAgeExpires() throws Exception {
+        maxAge = Duration.ofMinutes(10);
+        verifier.verify(token("first", firstKey, AUDIENCE, ISSUER));
+        clock.advance(Duration.ofMinutes(9));
+        verifier.verify(token("first", firstKey, AUDIENCE, ISSUER));
+        assertEquals(1, fetches.get());
+
+        clock.advance(Duration.ofMinutes(2));
+        verifier.verify(token("first", firstKey, AUDIENCE, ISSUER));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void rotatedKeyIsFetchedOnceForConcurrentSignIns() throws Exception {
+        verifier.verify(token("first", firstKey, AUDIENCE, ISSUER));
+        jwks = jwks(jwk("first", firstKey), jwk("rotated", rotatedKey));
+        clock.advance(Duration.ofMinutes(1));
+        fetchGate = new CountDownLatch(1);
+
+        String token = token("rotated", rotatedKey, AUDIENCE, ISSUER);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<OutboundUserResponse>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> verifier.verify(token)));
+            }
+            Thread.sleep(200);
+            fetchGate.countDown();
+            for (Future<OutboundUserResponse> result : results) {
+                assertEquals("subject-1", result.get(5, TimeUnit.SECONDS).getId());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void unknownKeyIdsDoNotFloodTheSource() throws Exception {
+        verifier.verify(token("first", firstKey, AUDIENCE, ISSUER));
+        clock.advance(Duration.ofMinutes(1));
+
+        for (int i = 0; i < 5; i++) {
+            String forged = token("forged-" + i, rotatedKey, AUDIENCE, ISSUER);
+            assertThrows(JwtValidationException.class, () -> verifier.verify(forged));
+        }
+
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void rejectsTokensForAnotherClientOrIssuer() {
+        String otherAudience = token("first", firstKey, "other-client", ISSUER);
+        String otherIssuer = token("first", firstKey, AUDIENCE, "https://issuer.example.com");
+
+        assertThrows(JwtValidationException.class, () -> verifier.verify(otherAudience));
+        assertThrows(JwtValidationException.class, () -> verifier.verify(otherIssuer));
+    }
+
+    @Test
+    public void rejectsTokensSignedWithAnotherKey() {
+        String token = token("first", rotatedKey, AUDIENCE, ISSUER);
+
+        assertThrows(JwtValidationException.class, () -> verifier.verify(token));
+    }
+
+    private static String token(String keyId, KeyPair keyPair, String audience, String issuer) {
+        Instant now = Instant.now();
+        return Jwts.builder()
+                .header().keyId(keyId).and()
+                .issuer(issuer)
+                .audience().add(audience).and()
+                .subject("subject-1")
+                .issuedAt(Date.from(now))
+                .expiration(Date.from(now.plus(Duration.ofHours(1))))
+                .claim("email", "user@example.com")
+                .claim("email_verified", true)
+                .claim("name", "User Name")
+                .claim("picture", "https://example.com/picture.png")
+                .signWith(keyPair.getPrivate())
+                .compact();
+    }
+
+    private static String jwks(String... keys) {
+        return "{\"keys\":[" + String.join(",", keys) + "]}";
+    }
+
+    private static String jwk(String keyId, KeyPair keyPair) {
+        RSAPublicKey key = (RSAPublicKey) keyPair.getPublic();
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return "{\"kty\":\"RSA\",\"use\":\"sig\",\"alg\":\"RS256\",\"kid\":\"" + keyId + "\","
+                + "\"n\":\"" + encoder.encodeToString(key.getModulus().toByteArray()) + "\","
+                + "\"e\":\"" + encoder.encodeToString(key.getPublicExponent().toByteArray()) + "\"}";
+    }
+
+    private static KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Clock of the key cache, moved forward by the tests.
+     */
+    private static class MutableClock extends Clock {
+        private volatile Instant instant = Instant.now();
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.hcmus.demo;
+
+import com.hcmus.demo.image.ImageApi;
+import com.hcmus.demo.image.LocalImageStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Stores images on a temporary directory and serves them through ImageApi.
+ */
+public class LocalImageStorageTest {
+    @TempDir
+    Path directory;
+
+    private LocalImageStorage storage;
+    private MockMvc mockMvc;
+    private byte[] png;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        storage = new LocalImageStorage(directory, "/images", 1024 * 1024, Duration.ofSeconds(5), 16, 1, 10);
+        mockMvc = MockMvcBuilders.standaloneSetup(new ImageApi(storage)).build();
+
+        BufferedImage image = new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        png = out.toByteArray();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        storage.shutdown();
+    }
+
+    @Test
+    public void storesByDigestAndGeneratesAThumbnail() throws Exception {
+        String url = storage.store(new ByteArrayInputStream(png));
+        String name = url.substring("/images/".length());
+
+        assertEquals(url, storage.store(new ByteArrayInputStream(png)));
+        assertTrue(Arrays.equals(png, Files.readAllBytes(storage.resolve(name))));
+
+        Path thumbnail = storage.resolve(name + "-thumb");
+        for (int i = 0; i < 100 && !Files.exists(thumbnail); i++) {
+            Thread.sleep(20);
+        }
+        BufferedImage read = ImageIO.read(thumbnail.toFile());
+        assertEquals(16, read.getWidth());
+        assertEquals(8, read.getHeight());
+    }
+
+    @Test
+    public void rejectsImagesOverTheMaximumSize() throws IOException {
+        LocalImageStorage small = new LocalImageStorage(directory, "/images", 16, Duration.ofSeconds(5), 16, 1, 10);
+        assertThrows(IOException.class, () -> small.store(new ByteArrayInputStream(png)));
+        small.shutdown();
+    }
+
+    @Test
+    public void servesWithStrongEtagAndRanges() throws Exception {
+        String url = storage.store(new ByteArrayInputStream(png));
+        String etag = "\"" + url.substring("/images/".length()) + "\"";
+
+        mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", etag))
+                .andExpect(header().string("Content-Type", "image/png"))
+                .andExpect(header().string("Cache-Control", "public, max-age=31536000, immutable"))
+                .andExpect(content().bytes(png));
+
+        mockMvc.perform(get(url).header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(get(url).header("Range", "bytes=0-7"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 0-7/" + png.length))
+                .andExpect(content().bytes(Arrays.copyOf(png, 8)));
+
+        mockMvc.perform(get(url).header("Range", "bytes=" + png.length + "-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable());
+
+        mockMvc.perform(get("/images/not-a-digest"))
+                .andExpect(status().isNotFound());
+    }
+}
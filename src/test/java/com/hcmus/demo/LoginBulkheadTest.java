@@ -0,0 +1,119 @@
+package com.hcmus.demo;
+
+import com.hcmus.demo.config.WebConfig;
+import com.hcmus.demo.exception_handler.ErrorDTO;
+import com.hcmus.demo.exception_handler.GlobalExceptionHandler;
+import com.hcmus.demo.security.CustomUserCache;
+import com.hcmus.demo.security.WebSecurityConfig;
+import com.hcmus.demo.security.auth.AuthController;
+import com.hcmus.demo.security.auth.AuthenticationExecutor;
+import com.hcmus.demo.security.auth.AuthenticationService;
+import com.hcmus.demo.security.auth.TokenService;
+import com.hcmus.demo.security.jwt.JwtTokenFilter;
+import com.hcmus.demo.security.jwt.JwtUtility;
+import com.hcmus.demo.security.password.PasswordHashingUnavailableException;
+import com.hcmus.demo.user.UserLookupCache;
+import com.hcmus.demo.user.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Logs in while the password hashing bulkhead cannot answer and checks that the login is answered with 503,
+ * including for an unknown username, whose password is still hashed against timing attacks, and when the failure
+ * reaches the exception handler wrapped by the authentication provider.
+ */
+@SpringBootTest(classes = LoginBulkheadTest.Config.class, webEnvironment = SpringBootTest.WebEnvironment.MOCK,
+        properties = {
+                "app.security.password.hashing.threads=1",
+                "app.security.password.hashing.queue-capacity=1",
+                // No BCrypt hash completes within the timeout: the bulkhead answers as if saturated
+                "app.security.password.hashing.timeout-ms=1"
+        })
+@AutoConfigureMockMvc
+public class LoginBulkheadTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private GlobalExceptionHandler exceptionHandler;
+
+    @MockBean
+    private JwtUtility jwtUtility;
+
+    @MockBean
+    private CustomUserCache userCache;
+
+    @MockBean
+    private UserLookupCache userLookupCache;
+
+    @MockBean
+    private UserRepository userRepository;
+
+    @MockBean
+    private TokenService tokenService;
+
+    @MockBean
+    private AuthenticationService authenticationService;
+
+    @Test
+    public void unknownUsernameIsAnsweredUnavailableWhileHashingIsSaturated() throws Exception {
+        assertLoginUnavailable("ghostuser");
+    }
+
+    @Test
+    public void saturationWrappedByTheAuthenticationProviderIsAnsweredUnavailable() {
+        // A failure inside the user details service reaches the handler wrapped by the provider
+        PasswordHashingUnavailableException unavailable =
+                new PasswordHashingUnavailableException("Too many authentication requests", 2);
+        InternalAuthenticationServiceException wrapped =
+                new InternalAuthenticationServiceException(unavailable.getMessage(), unavailable);
+
+        ResponseEntity<ErrorDTO> response = exceptionHandler.handleInternalAuthenticationService(
+                new MockHttpServletRequest("POST", "/auth/login"), wrapped);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("2", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    private void assertLoginUnavailable(String username) throws Exception {
+        MvcResult result = mockMvc.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\":\"" + username + "\",\"password\":\"password\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Configuration
+    @EnableAutoConfiguration(exclude = {DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class})
+    @Import({AuthController.class, AuthenticationExecutor.class, WebSecurityConfig.class, WebConfig.class,
+            JwtTokenFilter.class, GlobalExceptionHandler.class})
+    static class Config {
+    }
+}
@@ -0,0 +1,189 @@
+package com.hcmus.demo;
+
+import com.hcmus.demo.security.auth.ExchangeTokenRequest;
+import com.hcmus.demo.security.auth.OutboundUserResponse;
+import com.hcmus.demo.security.httpclient.IdentityProviderUnavailableException;
+import com.hcmus.demo.security.httpclient.OutboundClientConfig;
+import com.hcmus.demo.security.httpclient.OutboundClientFallbacks;
+import com.hcmus.demo.security.httpclient.OutboundIdentityClient;
+import com.hcmus.demo.security.httpclient.OutboundUserClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import feign.FeignException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.UserDetailsServiceAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JCircuitBreakerFactory;
+import org.springframework.cloud.openfeign.EnableFeignClients;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the identity provider clients on their production transport against a local stub server
+ * that can answer normally, slowly, with server errors or with rejections.
+ */
+@SpringBootTest(classes = OutboundClientTest.Config.class, webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {
+                "spring.cloud.openfeign.client.config.outbound-user-client.read-timeout=300",
+                "app.outbound.circuit-breaker.window-size=4",
+                "app.outbound.circuit-breaker.minimum-calls=4",
+                "app.outbound.circuit-breaker.time-limit-ms=2000"
+        })
+public class OutboundClientTest {
+    private static final HttpServer SERVER = startServer();
+    private static final AtomicInteger USER_INFO_CALLS = new AtomicInteger();
+    private static volatile String mode = "ok"; // ok, slow, fail or reject
+
+    @Autowired
+    private OutboundIdentityClient identityClient;
+
+    @Autowired
+    private OutboundUserClient userClient;
+
+    @Autowired
+    private Resilience4JCircuitBreakerFactory circuitBreakerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @DynamicPropertySource
+    static void stubUrls(DynamicPropertyRegistry registry) {
+        String url = "http://127.0.0.1:" + SERVER.getAddress().getPort();
+        registry.add("app.outbound.identity.url", () -> url);
+        registry.add("app.outbound.user.url", () -> url);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        mode = "ok";
+        USER_INFO_CALLS.set(0);
+        circuitBreakerFactory.getCircuitBreakerRegistry().getAllCircuitBreakers().forEach(CircuitBreaker::reset);
+    }
+
+    @AfterAll
+    public static void stopServer() {
+        SERVER.stop(0);
+    }
+
+    @Test
+    public void callsTheUpstreamAndRecordsLatency() {
+        assertEquals("stub-access-token", identityClient.exchangeToken(ExchangeTokenRequest.builder()
+                .code("code").build()).getAccessToken());
+        OutboundUserResponse user = userClient.getUserInfo("json", "stub-access-token");
+        assertEquals("stub@example.com", user.getEmail());
+
+        assertFalse(meterRegistry.find("http.client.requests").timers().isEmpty());
+    }
+
+    @Test
+    public void slowUpstreamFailsAfterTheReadTimeout() {
+        mode = "slow";
+
+        long start = System.nanoTime();
+        assertThrows(IdentityProviderUnavailableException.class, () -> userClient.getUserInfo("json", "token"));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis < 1500, "call took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    public void failingUpstreamOpensTheCircuit() {
+        mode = "fail";
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IdentityProviderUnavailableException.class, () -> userClient.getUserInfo("json", "token"));
+        }
+        int callsBeforeOpen = USER_INFO_CALLS.get();
+        for (int i = 0; i < 10; i++) {
+            assertThrows(IdentityProviderUnavailableException.class, () -> userClient.getUserInfo("json", "token"));
+        }
+
+        assertEquals(4, callsBeforeOpen);
+        assertEquals(callsBeforeOpen, USER_INFO_CALLS.get());
+    }
+
+    @Test
+    public void rejectedRequestsAreNotProviderFailures() {
+        mode = "reject";
+
+        for (int i = 0; i < 6; i++) {
+            assertThrows(FeignException.FeignClientException.class, () -> userClient.getUserInfo("json", "token"));
+        }
+
+        assertEquals(6, USER_INFO_CALLS.get());
+    }
+
+    private static HttpServer startServer() {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/token", exchange ->
+                    respond(exchange, 200, "{\"access_token\":\"stub-access-token\",\"token_type\":\"Bearer\"}"));
+            server.createContext("/oauth2/v1/userinfo", exchange -> {
+                USER_INFO_CALLS.incrementAndGet();
+                switch (mode) {
+                    case "slow" -> {
+                        sleep(1000);
+                        respond(exchange, 200, "{}");
+                    }
+                    case "fail" -> respond(exchange, 500, "{}");
+                    case "reject" -> respond(exchange, 401, "{}");
+                    default -> respond(exchange, 200, "{\"email\":\"stub@example.com\",\"name\":\"stub\"}");
+                }
+            });
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.start();
+            return server;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Configuration
+    @EnableAutoConfiguration(exclude = {DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class,
+            SecurityAutoConfiguration.class, UserDetailsServiceAutoConfiguration.class})
+    @EnableFeignClients(clients = {OutboundIdentityClient.class, OutboundUserClient.class})
+    @Import({OutboundClientConfig.class, OutboundClientFallbacks.Identity.class, OutboundClientFallbacks.UserInfo.class})
+    static class Config {
+    }
+}
@@ -0,0 +1,130 @@
+package com.hcmus.demo;
+
+import com.hcmus.demo.scheduling.JobLease;
+import com.hcmus.demo.scheduling.ScheduledJobLock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs several application contexts, one per simulated node, against one embedded database
+ * and checks that a scheduled job lease is held by exactly one of them.
+ */
+public class ScheduledJobLockTest {
+    private static final String JOB = "test-job";
+
+    private EmbeddedDatabase database;
+    private final List<AnnotationConfigApplicationContext> nodes = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        nodes.forEach(AnnotationConfigApplicationContext::close);
+        database.shutdown();
+    }
+
+    @Test
+    public void onlyOneNodeRunsTheJob() throws Exception {
+        List<ScheduledJobLock> locks = List.of(startNode("node-1"), startNode("node-2"), startNode("node-3"));
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(locks.size());
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (ScheduledJobLock lock : locks) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return lock.runLocked(JOB, Duration.ofSeconds(10), Duration.ofSeconds(10), lease -> {
+                        executions.incrementAndGet();
+                        sleep(200);
+                    });
+                }));
+            }
+            start.countDown();
+
+            int ran = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(10, TimeUnit.SECONDS)) {
+                    ran++;
+                }
+            }
+            assertEquals(1, ran);
+            assertEquals(1, executions.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void expiredLeaseIsTakenOverWithHigherFencingToken() {
+        ScheduledJobLock first = startNode("node-1");
+        ScheduledJobLock second = startNode("node-2");
+
+        // The first node "dies" while holding the lease: it never releases it
+        JobLease dead = first.tryAcquire(JOB, Duration.ofMillis(100)).orElseThrow();
+        assertTrue(second.tryAcquire(JOB, Duration.ofSeconds(10)).isEmpty());
+
+        sleep(150);
+        JobLease taken = second.tryAcquire(JOB, Duration.ofSeconds(10)).orElseThrow();
+
+        assertTrue(taken.fencingToken() > dead.fencingToken());
+        assertFalse(first.isHeld(dead));
+        assertTrue(second.isHeld(taken));
+    }
+
+    @Test
+    public void releasedLeaseIsKeptForLockAtLeast() {
+        ScheduledJobLock first = startNode("node-1");
+        ScheduledJobLock second = startNode("node-2");
+
+        assertTrue(first.runLocked(JOB, Duration.ofSeconds(10), Duration.ofMillis(300), lease -> { }));
+        assertFalse(second.runLocked(JOB, Duration.ofSeconds(10), Duration.ofMillis(300), lease -> { }));
+
+        sleep(350);
+        Optional<JobLease> lease = second.tryAcquire(JOB, Duration.ofSeconds(10));
+        assertTrue(lease.isPresent());
+        assertEquals("node-2", first.currentLeases().get(0).holder());
+    }
+
+    private ScheduledJobLock startNode(String nodeId) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources()
+                .addFirst(new MapPropertySource("node", Map.of("app.scheduling.node-id", nodeId)));
+        context.registerBean(DataSource.class, () -> database);
+        context.register(ScheduledJobLock.class);
+        context.refresh();
+        nodes.add(context);
+        return context.getBean(ScheduledJobLock.class);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.hcmus.demo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hcmus.demo.model.User;
+import com.hcmus.demo.user.UserExistenceFilter;
+import com.hcmus.demo.user.UserImportReport;
+import com.hcmus.demo.user.UserImportService;
+import com.hcmus.demo.user.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Imports users from NDJSON and CSV into an embedded database and checks the imported rows and the reported errors.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:import;MODE=MySQL;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "app.user-import.chunk-size=3"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({UserImportService.class, UserImportServiceTest.Config.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class UserImportServiceTest {
+    private static final AtomicInteger ENCODES = new AtomicInteger();
+    private static volatile Runnable beforeEncode = () -> { };
+
+    @Autowired
+    private UserImportService userImportService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private UserExistenceFilter userExistenceFilter;
+
+    @AfterEach
+    public void tearDown() {
+        beforeEncode = () -> { };
+        ENCODES.set(0);
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void csvColumnsAreFoundByNameAndQuotedFieldsAreUnescaped() throws Exception {
+        UserImportReport report = importCsv("""
+                password,Email,username
+                "pa,ss""word",first@example.com,"firstuser"
+                """);
+
+        assertEquals(1, report.getImported());
+        User user = userRepository.findByUsername("firstuser");
+        assertEquals("first@example.com", user.getEmail());
+        assertTrue(passwordEncoder.matches("pa,ss\"word", user.getPassword()));
+    }
+
+    @Test
+    public void csvRowsWithAnUnterminatedQuoteAreRejected() throws Exception {
+        UserImportReport report = importCsv("""
+                username,email,password
+                seconduser,"second@example.com,secret1
+                thirduser,third@example.com,secret1
+                """);
+
+        assertEquals(1, report.getImported());
+        assertEquals(List.of(new UserImportReport.RowError(2, "Invalid CSV: unterminated quote")), report.getErrors());
+    }
+
+    @Test
+    public void csvWithoutTheRequiredColumnsIsRejected() throws Exception {
+        UserImportReport report = importCsv("""
+                username,password
+                fourthuser,secret1
+                """);
+
+        assertEquals(0, report.getImported());
+        assertEquals(1, report.getFailed());
+        assertEquals(1, report.getErrors().get(0).line());
+    }
+
+    @Test
+    public void duplicatesWithinAChunkAreRejected() throws Exception {
+        UserImportReport report = importNdjson("""
+                {"username":"dupeuser","email":"dupe@example.com","password":"secret1"}
+                {"username":"DupeUser","email":"other@example.com","password":"secret1"}
+                {"username":"otheruser","email":"DUPE@example.com","password":"secret1"}
+                """);
+
+        assertEquals(1, report.getImported());
+        assertEquals(List.of(new UserImportReport.RowError(2, "Username already exists"),
+                new UserImportReport.RowError(3, "Email already exists")), report.getErrors());
+        assertEquals(1, userRepository.count());
+    }
+
+    @Test
+    public void rejectedBatchIsInsertedRowByRow() throws Exception {
+        // A user registers with the username of the second row while the chunk is being hashed
+        AtomicBoolean registered = new AtomicBoolean();
+        beforeEncode = () -> {
+            if (registered.compareAndSet(false, true)) {
+                userRepository.save(User.builder()
+                        .username("raceuser").email("race@example.com").password("x").createdAt(new Date()).build());
+            }
+        };
+
+        UserImportReport report = importNdjson("""
+                {"username":"batchuser1","email":"batch1@example.com","password":"secret1"}
+                {"username":"raceuser","email":"batch2@example.com","password":"secret1"}
+                {"username":"batchuser3","email":"batch3@example.com","password":"secret1"}
+                """);
+
+        assertEquals(2, report.getImported());
+        assertEquals(List.of(new UserImportReport.RowError(2, "Username already exists")), report.getErrors());
+        assertNotNull(userRepository.findByUsername("batchuser1"));
+        assertNotNull(userRepository.findByUsername("batchuser3"));
+        assertEquals("race@example.com", userRepository.findByUsername("raceuser").getEmail());
+    }
+
+    @Test
+    public void rowRejectedForAnotherReasonIsReportedAsInvalid() throws Exception {
+        // The database rejects one of the rows for a reason other than a duplicate
+        jdbcTemplate.execute("ALTER TABLE user ADD CONSTRAINT ck_import_test CHECK (email <> 'blocked@example.com')");
+        try {
+            UserImportReport report = importNdjson("""
+                    {"username":"checkuser1","email":"check1@example.com","password":"secret1"}
+                    {"username":"checkuser2","email":"blocked@example.com","password":"secret1"}
+                    """);
+
+            assertEquals(1, report.getImported());
+            assertEquals(List.of(new UserImportReport.RowError(2, "Invalid row, rejected by the database")),
+                    report.getErrors());
+            assertNotNull(userRepository.findByUsername("checkuser1"));
+        } finally {
+            jdbcTemplate.execute("ALTER TABLE user DROP CONSTRAINT ck_import_test");
+        }
+    }
+
+    @Test
+    public void bcryptHashesAreStoredWithoutHashing() throws Exception {
+        String hash = new BCryptPasswordEncoder(4).encode("secret1");
+
+        UserImportReport report = importNdjson("{\"username\":\"hasheduser\",\"email\":\"hashed@example.com\","
+                + "\"password\":\"{bcrypt}" + hash + "\"}\n");
+
+        assertEquals(1, report.getImported());
+        assertEquals(hash, userRepository.findByUsername("hasheduser").getPassword());
+        assertEquals(0, ENCODES.get());
+    }
+
+    private UserImportReport importCsv(String content) throws Exception {
+        return userImportService.importCsv(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private UserImportReport importNdjson(String content) throws Exception {
+        return userImportService.importNdjson(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        PasswordEncoder passwordEncoder() {
+            BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(4);
+            return new PasswordEncoder() {
+                @Override
+                public String encode(CharSequence rawPassword) {
+                    ENCODES.incrementAndGet();
+                    beforeEncode.run();
+                    return bcrypt.encode(rawPassword);
+                }
+
+                @Override
+                public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                    return bcrypt.matches(rawPassword, encodedPassword);
+                }
+            };
+        }
+
+        @Bean
+        LocalValidatorFactoryBean validator() {
+            return new LocalValidatorFactoryBean();
+        }
+
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+    }
+}
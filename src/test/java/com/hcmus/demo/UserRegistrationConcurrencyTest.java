@@ -0,0 +1,167 @@
+package com.hcmus.demo;
+
+import com.hcmus.demo.exception_handler.exception.ExistingEmailException;
+import com.hcmus.demo.exception_handler.exception.ExistingUsernameException;
+import com.hcmus.demo.model.User;
+import com.hcmus.demo.security.jwt.JwtUtility;
+import com.hcmus.demo.user.UserExistenceFilter;
+import com.hcmus.demo.user.UserLookupCache;
+import com.hcmus.demo.user.UserRepository;
+import com.hcmus.demo.user.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Fires parallel registrations of the same user against an embedded database
+ * and checks that exactly one is stored and the others are reported as duplicates.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:registration;MODE=MySQL;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.hikari.maximum-pool-size=8",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({UserService.class, UserRegistrationConcurrencyTest.Config.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class UserRegistrationConcurrencyTest {
+    private static final int ATTEMPTS = 8;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @MockBean
+    private UserLookupCache userLookupCache;
+
+    @MockBean
+    private UserExistenceFilter userExistenceFilter;
+
+    @MockBean
+    private JwtUtility jwtUtility;
+
+    @AfterEach
+    public void tearDown() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void parallelDuplicateRegistrationsStoreOneUser() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(ATTEMPTS);
+        try {
+            List<Future<User>> results = new ArrayList<>();
+            for (int i = 0; i < ATTEMPTS; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return userService.saveUser(newUser("racer", "racer@example.com"));
+                }));
+            }
+            start.countDown();
+
+            int created = 0;
+            int duplicates = 0;
+            for (Future<User> result : results) {
+                try {
+                    assertNotNull(result.get(30, TimeUnit.SECONDS).getId());
+                    created++;
+                } catch (ExecutionException ex) {
+                    assertTrue(ex.getCause() instanceof ExistingEmailException
+                            || ex.getCause() instanceof ExistingUsernameException, ex.getCause().toString());
+                    duplicates++;
+                }
+            }
+            assertEquals(1, created);
+            assertEquals(ATTEMPTS - 1, duplicates);
+            assertEquals(1, userRepository.count());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void duplicateEmailIsReportedAsExistingEmail() throws Exception {
+        userService.saveUser(newUser("first", "shared@example.com"));
+        assertThrows(ExistingEmailException.class, () -> userService.saveUser(newUser("second", "shared@example.com")));
+    }
+
+    @Test
+    public void duplicateUsernameIsReportedAsExistingUsername() throws Exception {
+        userService.saveUser(newUser("shared", "first@example.com"));
+        assertThrows(ExistingUsernameException.class, () -> userService.saveUser(newUser("shared", "second@example.com")));
+    }
+
+    @Test
+    public void federatedUserMatchesNoPassword() throws Exception {
+        User saved = userService.saveFederatedUser(User.builder()
+                .username("federated").email("federated@example.com").password("123456").build());
+
+        String stored = userRepository.findById(saved.getId()).orElseThrow().getPassword();
+        assertEquals(User.UNUSABLE_PASSWORD, stored);
+        assertFalse(passwordEncoder.matches("123456", stored));
+        assertFalse(passwordEncoder.matches(User.UNUSABLE_PASSWORD, stored));
+    }
+
+    @Test
+    public void legacyFederatedPasswordIsRetired() {
+        User legacy = userRepository.save(User.builder().username("legacy").email("legacy@example.com")
+                .password(passwordEncoder.encode("123456")).createdAt(new Date()).build());
+
+        assertTrue(userService.retireLegacyFederatedPassword(legacy));
+
+        String stored = userRepository.findById(legacy.getId()).orElseThrow().getPassword();
+        assertEquals(User.UNUSABLE_PASSWORD, stored);
+        assertFalse(passwordEncoder.matches("123456", stored));
+        assertFalse(userService.retireLegacyFederatedPassword(legacy));
+    }
+
+    @Test
+    public void otherPasswordIsKeptOnFederatedSignIn() {
+        String password = passwordEncoder.encode("password");
+        User local = userRepository.save(User.builder().username("local").email("local@example.com")
+                .password(password).createdAt(new Date()).build());
+
+        assertFalse(userService.retireLegacyFederatedPassword(local));
+
+        assertEquals(password, userRepository.findById(local.getId()).orElseThrow().getPassword());
+    }
+
+    private static User newUser(String username, String email) {
+        return User.builder().username(username).email(email).password("password").build();
+    }
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        PasswordEncoder passwordEncoder() {
+            return new BCryptPasswordEncoder(4);
+        }
+    }
+}
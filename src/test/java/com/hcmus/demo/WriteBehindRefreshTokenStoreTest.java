@@ -0,0 +1,154 @@
+package com.hcmus.demo;
+
+import com.hcmus.demo.token.RefreshTokenRecord;
+import com.hcmus.demo.token.WriteBehindRefreshTokenStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Revokes refresh token families in the write-behind store while their tokens are rotated or written by another node,
+ * and checks that no token of a revoked family comes back.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:refresh;MODE=MySQL;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "app.refresh-token.store=write-behind",
+        "app.refresh-token.write-behind.flush-interval-ms=10",
+        "app.security.jwt.refresh-token.expiration=100"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({WriteBehindRefreshTokenStore.class, WriteBehindRefreshTokenStoreTest.Config.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class WriteBehindRefreshTokenStoreTest {
+    private static final String FAMILY = "family-1";
+
+    @Autowired
+    private WriteBehindRefreshTokenStore store;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private long userId;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate.update("INSERT INTO user (username, email, password, created_at, version) "
+                + "VALUES ('tokenuser', 'token@example.com', 'x', ?, 0)", new Timestamp(System.currentTimeMillis()));
+        userId = jdbcTemplate.queryForObject("SELECT id FROM user WHERE username = 'tokenuser'", Long.class);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM refresh_tokens");
+        jdbcTemplate.update("DELETE FROM user");
+    }
+
+    @Test
+    public void savingIntoARevokedFamilyIsRefused() {
+        store.save(token("selector-1"));
+        store.revokeFamily(FAMILY);
+
+        assertThrows(IllegalStateException.class, () -> store.save(token("selector-2")));
+        assertTrue(store.findBySelector("selector-1").isEmpty());
+        assertTrue(store.findBySelector("selector-2").isEmpty());
+    }
+
+    @Test
+    public void revokedFamilyIsNotReadThroughAfterItsDeleteIsFlushed() throws Exception {
+        insertRow("selector-3");
+        store.revokeFamily(FAMILY);
+        awaitNoRows();
+
+        // A row of the family written late, e.g. by another node rotating the same token
+        insertRow("selector-4");
+
+        assertTrue(store.findBySelector("selector-4").isEmpty());
+    }
+
+    @Test
+    public void changeRejectedByTheDatabaseIsDroppedWithoutHoldingUpTheOthers() throws Exception {
+        store.save(token("selector-5", userId, "family-2"));
+        // The user was deleted meanwhile: the insert breaks the foreign key
+        store.save(token("selector-6", userId + 1000, "family-3"));
+        store.save(token("selector-7", userId, "family-2"));
+
+        awaitRow("selector-7");
+        store.save(token("selector-8", userId, "family-2"));
+        awaitRow("selector-8");
+
+        assertEquals(1, countRows("selector-5"));
+        assertEquals(0, countRows("selector-6"));
+        assertEquals(1, meterRegistry.get("refresh.token.store.dropped").counter().count());
+    }
+
+    private RefreshTokenRecord token(String selector) {
+        return token(selector, userId, FAMILY);
+    }
+
+    private RefreshTokenRecord token(String selector, long owner, String familyId) {
+        return new RefreshTokenRecord(selector, "hash-" + selector, owner, familyId,
+                new Date(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(100)), null);
+    }
+
+    private int countRows(String selector) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM refresh_tokens WHERE selector = ?",
+                Integer.class, selector);
+    }
+
+    private void awaitRow(String selector) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (countRows(selector) == 0) {
+            assertTrue(System.nanoTime() < deadline, "the change was not flushed");
+            Thread.sleep(10);
+        }
+    }
+
+    private void insertRow(String selector) {
+        jdbcTemplate.update("INSERT INTO refresh_tokens (selector, token, user_id, family_id, expiry_time) "
+                        + "VALUES (?, ?, ?, ?, ?)", selector, "hash-" + selector, userId, FAMILY,
+                new Timestamp(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(100)));
+    }
+
+    private void awaitNoRows() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (jdbcTemplate.queryForObject("SELECT COUNT(*) FROM refresh_tokens WHERE family_id = ?",
+                Integer.class, FAMILY) > 0) {
+            assertTrue(System.nanoTime() < deadline, "the revocation was not flushed");
+            Thread.sleep(10);
+        }
+    }
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.hcmus.demo.security.jwt;
+
+import com.hcmus.demo.model.User;
+import com.hcmus.demo.security.CustomUserDetail;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the allocation rate of the previous bearer extraction and principal construction
+ * with the current JwtTokenFilter hot path. Both paths hit the verified token cache, so the
+ * difference is the per-request work done around it.
+ *
+ * Run the main method with the test classpath and compare the {@code gc.alloc.rate.norm} rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtTokenFilterBenchmark {
+
+    private static final String SECRET = "benchmark-secret-benchmark-secret-benchmark-secret-benchmark-secret";
+
+    private JwtUtility jwtUtil;
+    private JwtTokenFilter filter;
+    private MockHttpServletRequest legacyRequest;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+    private final FilterChain chain = (req, res) -> { };
+
+    @Setup
+    public void setUp() throws Exception {
+        jwtUtil = new JwtUtility();
+        jwtUtil.setIssuerName("benchmark");
+        jwtUtil.setSecretKey(SECRET);
+        jwtUtil.setVerifiedCacheMaxSize(1000);
+        jwtUtil.setMeterRegistry(new SimpleMeterRegistry());
+        jwtUtil.setKeyRing(new JwtKeyRing(new JwtKeyRingProperties()));
+        jwtUtil.init();
+
+        filter = new JwtTokenFilter();
+        filter.jwtUtil = jwtUtil;
+
+        User user = User.builder().id(42L).username("benchmark-user").build();
+        String token = jwtUtil.generateAccessToken(user);
+        String legacyToken = Jwts.builder()
+                .subject("42,benchmark-user")
+                .issuer("benchmark")
+                .expiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes()), Jwts.SIG.HS512)
+                .compact();
+
+        request = new MockHttpServletRequest("GET", "/user/profile");
+        request.addHeader("Authorization", "Bearer " + token);
+        legacyRequest = new MockHttpServletRequest("GET", "/user/profile");
+        legacyRequest.addHeader("Authorization", "Bearer " + legacyToken);
+        response = new MockHttpServletResponse();
+    }
+
+    /**
+     * Replays the previous filter body: two header reads, String.split on the header and the
+     * subject, the INFO log message concatenations, and a User plus CustomUserDetail per request.
+     */
+    @Benchmark
+    public void legacyFilterPath(Blackhole bh) throws Exception {
+        String header = legacyRequest.getHeader("Authorization");
+        bh.consume("Authorization Header: " + header);
+        if (header == null || header.isEmpty() || !header.startsWith("Bearer")) {
+            return;
+        }
+        String[] parts = legacyRequest.getHeader("Authorization").split(" ");
+        String token = parts.length == 2 ? parts[1] : null;
+        bh.consume("Token: " + token);
+
+        Claims claims = jwtUtil.validateAccessToken(token);
+        String[] subject = ((String) claims.get(Claims.SUBJECT)).split(",");
+        User user = new User();
+        user.setId(Long.valueOf(subject[0]));
+        user.setUsername(subject[1]);
+        UserDetails userDetails = new CustomUserDetail(user);
+
+        var authentication = new UsernamePasswordAuthenticationToken(
+                userDetails, null, userDetails.getAuthorities());
+        authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(legacyRequest));
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+        bh.consume(authentication);
+        SecurityContextHolder.clearContext();
+    }
+
+    /**
+     * Runs the current filter body on a request carrying a cached token.
+     */
+    @Benchmark
+    public void currentFilterPath() throws Exception {
+        filter.doFilterInternal(request, response, chain);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(JwtTokenFilterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
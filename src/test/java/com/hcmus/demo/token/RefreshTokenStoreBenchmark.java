@@ -0,0 +1,102 @@
+package com.hcmus.demo.token;
+
+import com.hcmus.demo.model.User;
+import com.hcmus.demo.user.UserRepository;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the refresh token issuance throughput of the JPA store and of the write-behind store.
+ * Both run on an in-memory H2 database behind the application's single-connection Hikari pool,
+ * with several threads issuing tokens concurrently as logins and refreshes do.
+ *
+ * Run the main method with the test classpath and compare the ops/s of the two store parameters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class RefreshTokenStoreBenchmark {
+
+    @Param({"jpa", "write-behind"})
+    public String store;
+
+    private ConfigurableApplicationContext context;
+    private RefreshTokenStore refreshTokenStore;
+    private Long userId;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(BenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:tokens;MODE=MySQL;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--app.refresh-token.store=" + store,
+                        "--app.refresh-token.write-behind.enqueue-timeout-ms=60000");
+        refreshTokenStore = context.getBean(RefreshTokenStore.class);
+
+        User user = User.builder()
+                .username("benchmark-user")
+                .email("benchmark@example.com")
+                .password("password")
+                .createdAt(new Date())
+                .build();
+        userId = context.getBean(UserRepository.class).save(user).getId();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * Issues one refresh token of a new family, as a login does.
+     */
+    @Benchmark
+    public void issue() {
+        String key = Long.toString(sequence.incrementAndGet(), 36);
+        refreshTokenStore.save(new RefreshTokenRecord("s" + key, "h" + key, userId, "f" + key,
+                new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)), null));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(RefreshTokenStoreBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+    /**
+     * Minimal application: the datasource, JPA, the token and user repositories and the selected store.
+     */
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @EntityScan(basePackageClasses = User.class)
+    @EnableJpaRepositories(basePackageClasses = {RefreshTokenRepository.class, UserRepository.class})
+    @Import({JpaRefreshTokenStore.class, WriteBehindRefreshTokenStore.class})
+    static class BenchmarkApplication {
+    }
+}
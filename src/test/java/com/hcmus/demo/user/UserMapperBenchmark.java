@@ -0,0 +1,76 @@
+package com.hcmus.demo.user;
+
+import com.hcmus.demo.model.User;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ModelMapper conversions previously used on login, profile and registration
+ * with the hand-written UserMapper.
+ *
+ * Run the main method with the test classpath and compare the score and {@code gc.alloc.rate.norm} rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserMapperBenchmark {
+
+    private final ModelMapper modelMapper = new ModelMapper();
+    private final UserMapper userMapper = new UserMapper();
+    private User user;
+    private UserRequestDTO request;
+
+    @Setup
+    public void setUp() {
+        user = User.builder()
+                .id(42L)
+                .username("benchmark-user")
+                .email("benchmark-user@example.com")
+                .password("$2a$10$abcdefghijklmnopqrstuuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ")
+                .profile("https://example.com/avatar.png")
+                .createdAt(new Date())
+                .build();
+        request = new UserRequestDTO("benchmark-user", "benchmark-user@example.com", "benchmark-password");
+        // Let ModelMapper build its type maps before the measurement, as it would after the first requests
+        modelMapper.map(user, UserResponseDTO.class);
+        modelMapper.map(request, User.class);
+    }
+
+    @Benchmark
+    public UserResponseDTO modelMapperToResponse() {
+        return modelMapper.map(user, UserResponseDTO.class);
+    }
+
+    @Benchmark
+    public UserResponseDTO userMapperToResponse() {
+        return userMapper.toResponse(user);
+    }
+
+    @Benchmark
+    public User modelMapperToEntity() {
+        return modelMapper.map(request, User.class);
+    }
+
+    @Benchmark
+    public User userMapperToEntity() {
+        return userMapper.toEntity(request);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(UserMapperBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,119 @@
+package com.hcmus.demo.virtualthreads;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares thread-per-request and virtual-thread request handling on an embedded Tomcat,
+ * with 5000 concurrent connections each making a request that blocks 100 ms, as a request waiting
+ * on the identity provider or the database does.
+ * The platform pool has the Spring Boot default of 200 threads, so the requests run in 25 waves;
+ * virtual threads run them all at once.
+ *
+ * Needs Java 21 and a file descriptor limit above 10000. Run the main method with the test classpath
+ * and compare the time per batch of the two modes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VirtualThreadsBenchmark {
+    private static final int CONNECTIONS = 5000;
+    private static final long BLOCKING_MS = 100;
+    private static final int PLATFORM_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    private String mode;
+
+    private Tomcat tomcat;
+    private HttpClient httpClient;
+    private URI uri;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Connector connector = new Connector("HTTP/1.1");
+        connector.setPort(0);
+        connector.setProperty("maxConnections", String.valueOf(CONNECTIONS * 2));
+        connector.setProperty("acceptCount", String.valueOf(CONNECTIONS));
+        if (mode.equals("virtual")) {
+            connector.getProtocolHandler().setExecutor(new VirtualThreadExecutor("tomcat-handler-"));
+        } else {
+            connector.setProperty("maxThreads", String.valueOf(PLATFORM_THREADS));
+        }
+
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("tomcat-benchmark").toString());
+        tomcat.getService().addConnector(connector);
+        Context context = tomcat.addContext("", null);
+        Tomcat.addServlet(context, "blocking", new BlockingServlet());
+        context.addServletMappingDecoded("/", "blocking");
+        tomcat.start();
+
+        uri = URI.create("http://127.0.0.1:" + connector.getLocalPort() + "/");
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws LifecycleException {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+
+    @Benchmark
+    public int concurrentRequests() {
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(60)).build();
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[CONNECTIONS];
+        for (int i = 0; i < CONNECTIONS; i++) {
+            responses[i] = httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+        }
+        CompletableFuture.allOf(responses).join();
+        return responses.length;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(VirtualThreadsBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+    /**
+     * Answers after blocking the request thread.
+     */
+    private static class BlockingServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            try {
+                Thread.sleep(BLOCKING_MS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            response.getWriter().write("ok");
+        }
+    }
+}